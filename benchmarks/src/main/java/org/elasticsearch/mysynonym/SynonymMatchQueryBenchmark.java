@@ -0,0 +1,214 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AnalyzerScope;
+import org.elasticsearch.index.analysis.NamedAnalyzer;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.TextFieldMapper;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the query construction path of {@link SynonymMatchQuery}: {@code parse} as a
+ * shard runs it, then its parts, token collection, {@code analyzeList}, {@code newSynonymQuery}
+ * and {@code newBooleanQuery}. The analyzer is the one of a {@code synonym_dictionary} filter:
+ * {@code ruleCount} rules compiled by {@link SynonymDictionaryCompiler}, read back from the
+ * dictionary file and applied by {@link ReloadableSynonymGraphFilter}. A quarter of the rules
+ * have a multi-word synonym and a quarter a multi-word original, so the texts have graphs.
+ *
+ * Run with the GC profiler to get the allocation rate:
+ * <pre>java -jar target/benchmarks.jar SynonymMatchQueryBenchmark -prof gc</pre>
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SynonymMatchQueryBenchmark {
+
+    private static final String FIELD = "content";
+
+    @Param({"10000", "100000", "1000000"})
+    public int ruleCount;
+
+    /** number of words of the query text */
+    @Param({"3", "32"})
+    public int queryLength;
+
+    /** fraction of the query words that have a synonym */
+    @Param({"0.1", "0.5", "1.0"})
+    public double synonymDensity;
+
+    private Path dictionaryDir;
+    private SynonymDictionaryRegistry registry;
+    private Analyzer analyzer;
+    private QueryShardContext context;
+    private SynonymMatchQuery matchQuery;
+    private String queryText;
+    private AnalyzedText analyzedText;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ParseException {
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < ruleCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    // a multi-word synonym, the position gets a graph
+                    rules.append('w').append(i).append(", s").append(i).append(" t").append(i).append('\n');
+                    break;
+                case 1:
+                    // a multi-word original, matched across two positions
+                    rules.append('w').append(i).append(" v").append(i).append(", s").append(i).append('\n');
+                    break;
+                default:
+                    rules.append('w').append(i).append(", s").append(i).append('\n');
+            }
+        }
+        dictionaryDir = Files.createTempDirectory("synonym_match_benchmark");
+        final Path dictionary = dictionaryDir.resolve("synonyms.fst");
+        SynonymDictionary.write(SynonymDictionaryCompiler.compile(new StringReader(rules.toString()), false, true), dictionary);
+        registry = new SynonymDictionaryRegistry();
+        final IndexMetaData metaData = IndexMetaData.builder("benchmark")
+                .settings(Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT))
+                .numberOfShards(1)
+                .numberOfReplicas(0)
+                .build();
+        final SynonymDictionaryRegistry.Entry entry = registry.acquire(dictionary, metaData.getIndex());
+        analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                return new TokenStreamComponents(tokenizer, new ReloadableSynonymGraphFilter(tokenizer, entry, false));
+            }
+        };
+        context = newContext(metaData, new NamedAnalyzer("synonym", AnalyzerScope.INDEX, analyzer));
+
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < queryLength; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            // the first word always has a synonym so that newSynonymQuery has a position to work on
+            if (i == 0 || random.nextDouble() < synonymDensity) {
+                final int rule = random.nextInt(ruleCount);
+                text.append('w').append(rule);
+                if (rule % 4 == 1) {
+                    text.append(" v").append(rule);
+                }
+            } else {
+                text.append('x').append(random.nextInt(ruleCount));
+            }
+        }
+        queryText = text.toString();
+
+        matchQuery = newMatchQuery();
+        analyzedText = matchQuery.analyze(analyzer, FIELD, queryText);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        matchQuery.close();
+        analyzer.close();
+        registry.close();
+        Files.deleteIfExists(dictionaryDir.resolve("synonyms.fst"));
+        Files.deleteIfExists(dictionaryDir);
+    }
+
+    /**
+     * A shard context that maps {@link #FIELD} as a text field searched with the synonym
+     * analyzer, parse only needs the mapping and the index settings.
+     */
+    private static QueryShardContext newContext(IndexMetaData metaData, NamedAnalyzer searchAnalyzer) {
+        final Set<Setting<?>> settings = new HashSet<>(IndexScopedSettings.BUILT_IN_INDEX_SETTINGS);
+        settings.add(SynonymMatchQuery.MAX_EXPANDED_TERMS_SETTING);
+        final IndexSettings indexSettings = new IndexSettings(metaData, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, settings));
+        final TextFieldMapper.TextFieldType fieldType = new TextFieldMapper.TextFieldType();
+        fieldType.setName(FIELD);
+        fieldType.setTokenized(true);
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        fieldType.setIndexAnalyzer(searchAnalyzer);
+        fieldType.setSearchAnalyzer(searchAnalyzer);
+        fieldType.freeze();
+        return new QueryShardContext(0, indexSettings, null, null, null, null, null, null, null, null, null, null,
+                () -> 0L, null) {
+            @Override
+            public MappedFieldType fieldMapper(String name) {
+                return FIELD.equals(name) ? fieldType : null;
+            }
+
+            @Override
+            public Analyzer getSearchAnalyzer(MappedFieldType fieldType) {
+                return fieldType.searchAnalyzer();
+            }
+        };
+    }
+
+    private SynonymMatchQuery newMatchQuery() {
+        SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, SynonymMatchServices.NONE);
+        matchQuery.setSynonym_type_boost(SynonymMatchQuery.DEFAULT_SYNONYM_BOOST);
+        return matchQuery;
+    }
+
+    /** analysis and query construction of the field, what every shard does per request */
+    @Benchmark
+    public Query parse() throws IOException {
+        try (SynonymMatchQuery matchQuery = newMatchQuery()) {
+            return matchQuery.parse(FIELD, queryText);
+        }
+    }
+
+    @Benchmark
+    public AnalyzedText analyze() {
+        return matchQuery.analyze(analyzer, FIELD, queryText);
+    }
+
+    @Benchmark
+    public Query analyzeList() {
+        return matchQuery.analyzeList(FIELD, analyzedText);
+    }
+
+    @Benchmark
+    public Query newSynonymQuery() {
+        return matchQuery.newSynonymQuery(FIELD, analyzedText, 0);
+    }
+
+    @Benchmark
+    public Query newBooleanQuery() {
+        return matchQuery.newBooleanQuery(FIELD, analyzedText);
+    }
+}
@@ -0,0 +1,382 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.FutureArrays;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Packed per position term lists of an analyzed query text.
+ *
+ * All term bytes live in one shared byte pool, the terms of position {@code p} are the
+ * term ordinals in {@code [positionStart(p), positionEnd(p))} and the token type of each
+ * term is kept as a {@link TermType} code. A term produced by a graph token filter may
+ * span several positions, its position length is only stored when at least one term of
+ * the text spans more than one position (see {@link #hasGraph()}). Instances are
+ * immutable once built, so they can be shared between threads and kept in the
+ * {@link SynonymAnalysisCache}.
+ *
+ * On the wire the distinct terms are written once as a dictionary, followed by the
+ * positions as vints that pack the dictionary ordinal and the type code of each term,
+ * and a flag telling whether a position length follows.
+ */
+public final class AnalyzedText implements Accountable, Writeable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(AnalyzedText.class);
+
+    public static final AnalyzedText EMPTY = new Builder().build();
+
+    private final byte[] bytes;
+    private final int[] termOffsets;
+    private final byte[] types;
+    private final int[] positionStarts;
+    // null if every term spans a single position
+    private final int[] positionLengths;
+    private final int termCount;
+    private final int positionCount;
+
+    private AnalyzedText(byte[] bytes, int[] termOffsets, byte[] types, int[] positionStarts,
+                         int[] positionLengths, int termCount, int positionCount) {
+        this.bytes = bytes;
+        this.termOffsets = termOffsets;
+        this.types = types;
+        this.positionStarts = positionStarts;
+        this.positionLengths = positionLengths;
+        this.termCount = termCount;
+        this.positionCount = positionCount;
+    }
+
+    public int positionCount() {
+        return positionCount;
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public boolean isEmpty() {
+        return positionCount == 0;
+    }
+
+    /** Ordinal of the first term of the position. */
+    public int positionStart(int position) {
+        return positionStarts[position];
+    }
+
+    /** Ordinal after the last term of the position. */
+    public int positionEnd(int position) {
+        return positionStarts[position + 1];
+    }
+
+    /** Number of terms at the position, more than one means the position has synonyms. */
+    public int positionSize(int position) {
+        return positionStarts[position + 1] - positionStarts[position];
+    }
+
+    /**
+     * Returns the bytes of the term. The returned {@link BytesRef} is a slice of the
+     * shared pool and must not be modified.
+     */
+    public BytesRef term(int ord) {
+        return new BytesRef(bytes, termOffsets[ord], termOffsets[ord + 1] - termOffsets[ord]);
+    }
+
+    /** Returns the {@link TermType} code of the term. */
+    public int type(int ord) {
+        return types[ord];
+    }
+
+    /** Returns the number of positions the term spans, more than one for multi-token synonyms. */
+    public int positionLength(int ord) {
+        return positionLengths == null ? 1 : positionLengths[ord];
+    }
+
+    /** Returns true if at least one term spans more than one position. */
+    public boolean hasGraph() {
+        return positionLengths != null;
+    }
+
+    /**
+     * Returns the text in canonical form: the terms of each position are deduplicated and
+     * sorted, original terms first, so that equivalent analyzer outputs build equal queries
+     * and equal cache keys. A term that is both an original term and a synonym of the same
+     * position is kept as an original term.
+     */
+    public AnalyzedText canonicalize() {
+        if (isCanonical()) {
+            return this;
+        }
+        Builder builder = new Builder();
+        int maxPositionSize = 0;
+        for (int position = 0; position < positionCount; position++) {
+            maxPositionSize = Math.max(maxPositionSize, positionSize(position));
+        }
+        final OrdSorter sorter = new OrdSorter(new int[maxPositionSize]);
+        final int[] ords = sorter.ords;
+        for (int position = 0; position < positionCount; position++) {
+            builder.startPosition();
+            final int size = positionSize(position);
+            for (int i = 0; i < size; i++) {
+                ords[i] = positionStart(position) + i;
+            }
+            // the original term sorts before a synonym with the same bytes and is the one kept
+            sorter.byTerm = true;
+            sorter.sort(0, size);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (kept == 0 || compareTerms(ords[kept - 1], ords[i]) != 0) {
+                    ords[kept++] = ords[i];
+                }
+            }
+            sorter.byTerm = false;
+            sorter.sort(0, kept);
+            for (int i = 0; i < kept; i++) {
+                builder.addTerm(term(ords[i]), types[ords[i]], positionLength(ords[i]));
+            }
+        }
+        return builder.build();
+    }
+
+    /** Sorts term ordinals in place, without boxing them. */
+    private final class OrdSorter extends IntroSorter {
+
+        private final int[] ords;
+        // by term then type to deduplicate, by type then term for the canonical order
+        private boolean byTerm;
+        private int pivot;
+
+        OrdSorter(int[] ords) {
+            this.ords = ords;
+        }
+
+        private int order(int a, int b) {
+            if (byTerm == false) {
+                return compareOrds(a, b);
+            }
+            int cmp = compareTerms(a, b);
+            return cmp != 0 ? cmp : Integer.compare(types[a], types[b]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+            final int tmp = ords[i];
+            ords[i] = ords[j];
+            ords[j] = tmp;
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+            return order(ords[i], ords[j]);
+        }
+
+        @Override
+        protected void setPivot(int i) {
+            pivot = ords[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+            return order(pivot, ords[j]);
+        }
+    }
+
+    private boolean isCanonical() {
+        for (int position = 0; position < positionCount; position++) {
+            for (int i = positionStart(position) + 1; i < positionEnd(position); i++) {
+                if (compareOrds(i - 1, i) >= 0) {
+                    return false;
+                }
+                // a synonym equal to an original term of the position
+                for (int j = positionStart(position); j < i && types[i] != types[j]; j++) {
+                    if (compareTerms(j, i) == 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private int compareOrds(int a, int b) {
+        int cmp = Integer.compare(types[a], types[b]);
+        return cmp != 0 ? cmp : compareTerms(a, b);
+    }
+
+    // terms with different position lengths are different paths of a graph
+    private int compareTerms(int a, int b) {
+        int cmp = FutureArrays.compareUnsigned(bytes, termOffsets[a], termOffsets[a + 1],
+                bytes, termOffsets[b], termOffsets[b + 1]);
+        return cmp != 0 ? cmp : Integer.compare(positionLength(a), positionLength(b));
+    }
+
+    public static AnalyzedText readFrom(StreamInput in) throws IOException {
+        final int dictionarySize = in.readVInt();
+        final BytesRef[] dictionary = new BytesRef[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = in.readBytesRef();
+        }
+        final int positions = in.readVInt();
+        Builder builder = new Builder();
+        for (int position = 0; position < positions; position++) {
+            builder.startPosition();
+            final int size = in.readVInt();
+            for (int i = 0; i < size; i++) {
+                final int code = in.readVInt();
+                final int positionLength = (code & 2) == 0 ? 1 : in.readVInt();
+                builder.addTerm(dictionary[code >>> 2], code & 1, positionLength);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        // synonyms often repeat terms of other positions, so terms are written only once
+        BytesRefHash dictionary = new BytesRefHash();
+        int[] ords = new int[termCount];
+        for (int i = 0; i < termCount; i++) {
+            int ord = dictionary.add(term(i));
+            ords[i] = ord < 0 ? -ord - 1 : ord;
+        }
+        out.writeVInt(dictionary.size());
+        BytesRef spare = new BytesRef();
+        for (int ord = 0; ord < dictionary.size(); ord++) {
+            out.writeBytesRef(dictionary.get(ord, spare));
+        }
+        out.writeVInt(positionCount);
+        for (int position = 0; position < positionCount; position++) {
+            out.writeVInt(positionSize(position));
+            for (int i = positionStart(position); i < positionEnd(position); i++) {
+                assert types[i] == TermType.ORIGINAL || types[i] == TermType.SYNONYM;
+                final int positionLength = positionLength(i);
+                out.writeVInt(ords[i] << 2 | (positionLength == 1 ? 0 : 2) | types[i]);
+                if (positionLength != 1) {
+                    out.writeVInt(positionLength);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AnalyzedText other = (AnalyzedText) o;
+        return Arrays.equals(bytes, other.bytes) &&
+                Arrays.equals(termOffsets, other.termOffsets) &&
+                Arrays.equals(types, other.types) &&
+                Arrays.equals(positionStarts, other.positionStarts) &&
+                Arrays.equals(positionLengths, other.positionLengths);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(bytes);
+        result = 31 * result + Arrays.hashCode(types);
+        result = 31 * result + Arrays.hashCode(positionStarts);
+        result = 31 * result + Arrays.hashCode(positionLengths);
+        return result;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED
+                + RamUsageEstimator.sizeOf(bytes)
+                + RamUsageEstimator.sizeOf(termOffsets)
+                + RamUsageEstimator.sizeOf(types)
+                + RamUsageEstimator.sizeOf(positionStarts)
+                + (positionLengths == null ? 0 : RamUsageEstimator.sizeOf(positionLengths));
+    }
+
+    /**
+     * Collects the terms of a token stream. Positions are started explicitly and terms
+     * are appended to the current position.
+     */
+    public static final class Builder {
+        private byte[] bytes = new byte[64];
+        private int byteCount;
+        private int[] termOffsets = new int[9];
+        private byte[] types = new byte[8];
+        private int termCount;
+        private int[] positionStarts = new int[9];
+        private int[] positionLengths;
+        private int positionCount;
+
+        public Builder startPosition() {
+            positionStarts = ArrayUtil.grow(positionStarts, positionCount + 2);
+            positionStarts[positionCount] = termCount;
+            positionCount++;
+            return this;
+        }
+
+        public Builder addTerm(BytesRef term, int type) {
+            return addTerm(term, type, 1);
+        }
+
+        public Builder addTerm(BytesRef term, int type, int positionLength) {
+            if (positionCount == 0) {
+                throw new IllegalStateException("startPosition must be called before adding terms");
+            }
+            bytes = ArrayUtil.grow(bytes, byteCount + term.length);
+            System.arraycopy(term.bytes, term.offset, bytes, byteCount, term.length);
+            termOffsets = ArrayUtil.grow(termOffsets, termCount + 2);
+            types = ArrayUtil.grow(types, termCount + 1);
+            termOffsets[termCount] = byteCount;
+            types[termCount] = (byte) type;
+            if (positionLength != 1 && positionLengths == null) {
+                // terms added so far all span a single position
+                positionLengths = new int[types.length];
+                Arrays.fill(positionLengths, 0, termCount, 1);
+            }
+            if (positionLengths != null) {
+                positionLengths = ArrayUtil.grow(positionLengths, termCount + 1);
+                positionLengths[termCount] = positionLength;
+            }
+            byteCount += term.length;
+            termCount++;
+            return this;
+        }
+
+        public int positionCount() {
+            return positionCount;
+        }
+
+        public int termCount() {
+            return termCount;
+        }
+
+        /** Bytes of the buffers of the builder, they grow while a token stream is collected. */
+        public long ramBytesUsed() {
+            return RamUsageEstimator.sizeOf(bytes)
+                    + RamUsageEstimator.sizeOf(termOffsets)
+                    + RamUsageEstimator.sizeOf(types)
+                    + RamUsageEstimator.sizeOf(positionStarts)
+                    + (positionLengths == null ? 0 : RamUsageEstimator.sizeOf(positionLengths));
+        }
+
+        public AnalyzedText build() {
+            termOffsets[termCount] = byteCount;
+            positionStarts[positionCount] = termCount;
+            return new AnalyzedText(
+                    ArrayUtil.copyOfSubArray(bytes, 0, byteCount),
+                    ArrayUtil.copyOfSubArray(termOffsets, 0, termCount + 1),
+                    ArrayUtil.copyOfSubArray(types, 0, termCount),
+                    ArrayUtil.copyOfSubArray(positionStarts, 0, positionCount + 1),
+                    positionLengths == null ? null : ArrayUtil.copyOfSubArray(positionLengths, 0, termCount),
+                    termCount, positionCount);
+        }
+    }
+}
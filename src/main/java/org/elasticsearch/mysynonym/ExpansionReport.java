@@ -0,0 +1,143 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What happened to the synonym expansion of one synonym_match query on a shard. The
+ * report is attached to the query so that it shows up in the profile output.
+ *
+ * The expanded terms are kept as the {@link AnalyzedText}s the query was built from and
+ * only formatted when the report is printed.
+ */
+public final class ExpansionReport {
+
+    private final List<String> prunedSynonyms = new ArrayList<>();
+    private final List<String> flattenedGraphs = new ArrayList<>();
+    private final List<AnalyzedText> expansions = new ArrayList<>();
+    private long analysisNanos;
+    private int droppedPositions;
+
+    void analyzed(long nanos) {
+        analysisNanos += nanos;
+    }
+
+    void droppedPositions(int count) {
+        droppedPositions += count;
+    }
+
+    void expanded(AnalyzedText positionTerms) {
+        expansions.add(positionTerms);
+    }
+
+    void pruned(String term) {
+        prunedSynonyms.add(term);
+    }
+
+    void flattened(String segment) {
+        // multi field queries walk the same graph once per field
+        if (flattenedGraphs.contains(segment) == false) {
+            flattenedGraphs.add(segment);
+        }
+    }
+
+    /** Synonyms that were dropped because of max_synonyms_per_position or max_synonym_doc_freq_ratio. */
+    public List<String> prunedSynonyms() {
+        return prunedSynonyms;
+    }
+
+    /** Synonym graphs that had more than max_graph_paths paths and were matched term by term. */
+    public List<String> flattenedGraphs() {
+        return flattenedGraphs;
+    }
+
+    /** Time spent getting the terms of the query text, from the analysis cache or from the analyzer. */
+    public long analysisNanos() {
+        return analysisNanos;
+    }
+
+    /** The terms the query was built from, one entry per analyzed text. */
+    public List<AnalyzedText> expansions() {
+        return expansions;
+    }
+
+    /** Positions of a long text that were not kept because of max_query_terms. */
+    public int droppedPositions() {
+        return droppedPositions;
+    }
+
+    /** Whether the expansion was truncated. */
+    public boolean isEmpty() {
+        return prunedSynonyms.isEmpty() && flattenedGraphs.isEmpty() && droppedPositions == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (prunedSynonyms.isEmpty() == false) {
+            builder.append("pruned_synonyms=").append(prunedSynonyms);
+        }
+        if (flattenedGraphs.isEmpty() == false) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append("flattened_graphs=").append(flattenedGraphs);
+        }
+        if (droppedPositions > 0) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append("dropped_positions=").append(droppedPositions);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The whole report: analysis time, expanded terms per position with their type, and
+     * the truncated expansion.
+     */
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("analysis_nanos=").append(analysisNanos);
+        builder.append(", expanded_terms=[");
+        for (int i = 0; i < expansions.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            appendTerms(builder, expansions.get(i));
+        }
+        builder.append(']');
+        builder.append(", pruned_synonyms=").append(prunedSynonyms.size());
+        if (prunedSynonyms.isEmpty() == false) {
+            builder.append(' ').append(prunedSynonyms);
+        }
+        if (flattenedGraphs.isEmpty() == false) {
+            builder.append(", flattened_graphs=").append(flattenedGraphs);
+        }
+        if (droppedPositions > 0) {
+            builder.append(", dropped_positions=").append(droppedPositions);
+        }
+        return builder.toString();
+    }
+
+    private static void appendTerms(StringBuilder builder, AnalyzedText positionTerms) {
+        builder.append('[');
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            if (position > 0) {
+                builder.append(", ");
+            }
+            builder.append('[');
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (i > positionTerms.positionStart(position)) {
+                    builder.append(", ");
+                }
+                BytesRef term = positionTerms.term(i);
+                builder.append(term.utf8ToString()).append('/').append(TermType.toString(positionTerms.type(i)));
+            }
+            builder.append(']');
+        }
+        builder.append(']');
+    }
+}
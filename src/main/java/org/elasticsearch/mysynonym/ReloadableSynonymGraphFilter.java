@@ -0,0 +1,86 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+
+import java.io.IOException;
+
+/**
+ * {@link SynonymGraphFilter} over the current version of a reloadable dictionary.
+ *
+ * The dictionary is acquired when the stream is reset and released when it is closed, so
+ * one analyzed text always sees a single version of the rules. The inner filter is only
+ * rebuilt when a reset sees a new version.
+ */
+final class ReloadableSynonymGraphFilter extends TokenFilter {
+
+    private final SynonymDictionaryRegistry.Entry entry;
+    private final boolean ignoreCase;
+    // passes the tokens of the input to the inner filter, reset and close are done by this filter
+    private final TokenStream adapter;
+    private SynonymDictionary dictionary;
+    private TokenStream filter;
+    private boolean acquired;
+
+    ReloadableSynonymGraphFilter(TokenStream input, SynonymDictionaryRegistry.Entry entry, boolean ignoreCase) {
+        super(input);
+        this.entry = entry;
+        this.ignoreCase = ignoreCase;
+        this.adapter = new TokenFilter(input) {
+            @Override
+            public boolean incrementToken() throws IOException {
+                return input.incrementToken();
+            }
+
+            @Override
+            public void reset() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        this.filter = adapter;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        return filter.incrementToken();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        release();
+        SynonymDictionary next = entry.acquire();
+        acquired = true;
+        if (next != dictionary) {
+            dictionary = next;
+            // a dictionary without rules has no FST
+            filter = next.map().fst == null ? adapter : new SynonymGraphFilter(adapter, next.map(), ignoreCase);
+        }
+        filter.reset();
+    }
+
+    @Override
+    public void end() throws IOException {
+        filter.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (acquired) {
+            acquired = false;
+            dictionary.decRef();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.Index;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Node level cache of analyzed query text. The cached value is the per position
+ * term list produced by {@link SynonymMatchQuery}, so a repeated query skips the
+ * whole {@link org.apache.lucene.analysis.TokenStream} work.
+ *
+ * Entries are keyed on the identity of the analyzer instance: analyzers are rebuilt
+ * whenever the analysis settings (and therefore the synonym set) of an index change,
+ * so stale entries are never hit again and age out of the cache. All entries of an
+ * index are also dropped eagerly when the index is removed from the node.
+ *
+ * Reloading a synonym dictionary changes the output of analyzers that stay the same
+ * instance. The key also has the generation of the {@code synonym_dictionary} filters of the
+ * analyzer, see {@link SynonymDictionaryTokenFilterFactory#dictionaryGeneration(Analyzer)}, so
+ * a reload only stops the entries of the analyzers that use the reloaded dictionary from being
+ * hit, they age out like the others.
+ */
+public final class SynonymAnalysisCache {
+
+    public static final Setting<ByteSizeValue> CACHE_SIZE_SETTING =
+            Setting.memorySizeSetting("synonym_match.analysis_cache.size", "1%", Property.NodeScope);
+
+    public static final Setting<Integer> MAX_TEXT_LENGTH_SETTING =
+            Setting.intSetting("synonym_match.analysis_cache.max_text_length", 256, 0, Property.NodeScope);
+
+    private final Cache<Key, AnalyzedText> cache;
+    private final int maxTextLength;
+
+    public SynonymAnalysisCache(Settings settings) {
+        this.maxTextLength = MAX_TEXT_LENGTH_SETTING.get(settings);
+        this.cache = CacheBuilder.<Key, AnalyzedText>builder()
+                .setMaximumWeight(CACHE_SIZE_SETTING.get(settings).getBytes())
+                .weigher((key, value) -> key.ramBytesUsed() + value.ramBytesUsed())
+                .build();
+    }
+
+    /** Whether the text is short enough to be worth caching. */
+    public boolean accepts(String queryText) {
+        return queryText.length() <= maxTextLength;
+    }
+
+    public AnalyzedText getOrCompute(Index index, Analyzer analyzer, String field, String queryText,
+                                             Loader loader) throws ExecutionException {
+        final long generation = SynonymDictionaryTokenFilterFactory.dictionaryGeneration(analyzer);
+        return cache.computeIfAbsent(new Key(generation, index, analyzer, field, queryText),
+                key -> loader.load());
+    }
+
+    /** Drops every entry that was computed for the given index. */
+    public void invalidate(Index index) {
+        for (Iterator<Key> it = cache.keys().iterator(); it.hasNext(); ) {
+            if (it.next().index.equals(index)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long hits() {
+        return cache.stats().getHits();
+    }
+
+    public long misses() {
+        return cache.stats().getMisses();
+    }
+
+    public long evictions() {
+        return cache.stats().getEvictions();
+    }
+
+    public int count() {
+        return cache.count();
+    }
+
+    public long weight() {
+        return cache.weight();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        AnalyzedText load() throws Exception;
+    }
+
+    static final class Key {
+        private final long generation;
+        private final Index index;
+        private final Analyzer analyzer;
+        private final String field;
+        private final String text;
+        private final int hashCode;
+
+        Key(long generation, Index index, Analyzer analyzer, String field, String text) {
+            this.generation = generation;
+            this.index = index;
+            this.analyzer = analyzer;
+            this.field = field;
+            this.text = text;
+            this.hashCode = Objects.hash(generation, index, System.identityHashCode(analyzer), field, text);
+        }
+
+        long ramBytesUsed() {
+            return 64 + 2L * (field.length() + text.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key other = (Key) o;
+            return generation == other.generation &&
+                    analyzer == other.analyzer &&
+                    index.equals(other.index) &&
+                    field.equals(other.field) &&
+                    text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
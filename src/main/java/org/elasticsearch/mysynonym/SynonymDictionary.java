@@ -0,0 +1,151 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.fst.ByteSequenceOutputs;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.OffHeapFSTStore;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A compiled synonym map loaded from a file.
+ *
+ * The FST of the map is read through a memory mapped {@link IndexInput} and stays off
+ * heap, only the output words of the rules are loaded on heap. A dictionary is shared by
+ * all the token filters of the node that point to the same file, see
+ * {@link SynonymDictionaryRegistry}.
+ *
+ * Dictionaries are reference counted: the registry holds one reference while the
+ * dictionary is the current version of its file, and each token stream holds one while
+ * it reads from it. The file is unmapped once the last reference is released, so a
+ * reload never pulls the mapping away from a stream that is still running.
+ *
+ * The file starts with a codec header, followed by {@code maxHorizontalContext}, the
+ * output words and the FST if the map has rules, and ends with a codec footer.
+ */
+public final class SynonymDictionary extends AbstractRefCounted implements Accountable {
+
+    static final String CODEC_NAME = "synonym_match_dictionary";
+    static final int VERSION_START = 0;
+    static final int VERSION_CURRENT = VERSION_START;
+
+    private final Path path;
+    private final Directory directory;
+    private final IndexInput input;
+    private final SynonymMap map;
+    private final long generation;
+
+    private SynonymDictionary(Path path, long generation, Directory directory, IndexInput input, SynonymMap map) {
+        super("synonym_dictionary");
+        this.path = path;
+        this.generation = generation;
+        this.directory = directory;
+        this.input = input;
+        this.map = map;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public SynonymMap map() {
+        return map;
+    }
+
+    /** Version of the file, incremented each time the file is reloaded. */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Opens a compiled dictionary. The file stays mapped until the last reference is released.
+     */
+    public static SynonymDictionary open(Path path, long generation) throws IOException {
+        Directory directory = new MMapDirectory(path.getParent());
+        IndexInput input = null;
+        boolean success = false;
+        try {
+            input = directory.openInput(path.getFileName().toString(), IOContext.READ);
+            CodecUtil.checkHeader(input, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+            final int maxHorizontalContext = input.readVInt();
+            final int wordCount = input.readVInt();
+            BytesRefHash words = new BytesRefHash();
+            BytesRef word = new BytesRef();
+            for (int i = 0; i < wordCount; i++) {
+                word.length = input.readVInt();
+                word.bytes = ArrayUtil.grow(word.bytes, word.length);
+                input.readBytes(word.bytes, 0, word.length);
+                // add copies the bytes
+                words.add(word);
+            }
+            // the FST bytes are not copied, they are read from the mapped file
+            FST<BytesRef> fst = input.readByte() == 0 ? null :
+                    new FST<>(input, ByteSequenceOutputs.getSingleton(), new OffHeapFSTStore());
+            CodecUtil.retrieveChecksum(input);
+            SynonymDictionary dictionary = new SynonymDictionary(path, generation, directory,
+                    input, new SynonymMap(fst, words, maxHorizontalContext));
+            success = true;
+            return dictionary;
+        } finally {
+            if (success == false) {
+                IOUtils.closeWhileHandlingException(input, directory);
+            }
+        }
+    }
+
+    /**
+     * Writes a synonym map in the format read by {@link #open(Path, long)}.
+     */
+    public static void write(SynonymMap map, Path path) throws IOException {
+        try (Directory directory = FSDirectory.open(path.getParent());
+             IndexOutput output = directory.createOutput(path.getFileName().toString(), IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(output, CODEC_NAME, VERSION_CURRENT);
+            output.writeVInt(map.maxHorizontalContext);
+            output.writeVInt(map.words.size());
+            BytesRef spare = new BytesRef();
+            for (int ord = 0; ord < map.words.size(); ord++) {
+                map.words.get(ord, spare);
+                output.writeVInt(spare.length);
+                output.writeBytes(spare.bytes, spare.offset, spare.length);
+            }
+            // a map without rules has no FST
+            output.writeByte((byte) (map.fst == null ? 0 : 1));
+            if (map.fst != null) {
+                map.fst.save(output);
+            }
+            CodecUtil.writeFooter(output);
+        }
+    }
+
+    /** Heap used by the dictionary, the mapped FST bytes are not counted. */
+    @Override
+    public long ramBytesUsed() {
+        // BytesRefHash does not report its size, count the word bytes and the ords
+        long words = 0;
+        BytesRef spare = new BytesRef();
+        for (int ord = 0; ord < map.words.size(); ord++) {
+            words += map.words.get(ord, spare).length + 2 * Integer.BYTES;
+        }
+        return RamUsageEstimator.shallowSizeOf(map) + (map.fst == null ? 0 : map.fst.ramBytesUsed()) + words;
+    }
+
+    @Override
+    protected void closeInternal() {
+        IOUtils.closeWhileHandlingException(input, directory);
+    }
+}
@@ -0,0 +1,80 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+/**
+ * Compiles a synonym file in the solr format into the dictionary file read by the
+ * {@code synonym_dictionary} token filter.
+ *
+ * <pre>
+ * java -cp "synonym_match.jar:$ES_HOME/lib/*" org.elasticsearch.mysynonym.SynonymDictionaryCompiler \
+ *     synonyms.txt $ES_HOME/config/analysis/synonyms.fst [--lowercase] [--no-expand]
+ * </pre>
+ *
+ * Rules are tokenized on whitespace, and lowercased with {@code --lowercase}. They must
+ * match the tokens produced by the analyzer chain in front of the filter.
+ */
+public final class SynonymDictionaryCompiler {
+
+    private SynonymDictionaryCompiler() {
+    }
+
+    public static SynonymMap compile(Reader rules, boolean lowercase, boolean expand) throws IOException, ParseException {
+        Analyzer analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                TokenStream stream = lowercase ? new LowerCaseFilter(tokenizer) : tokenizer;
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        };
+        try {
+            SolrSynonymParser parser = new SolrSynonymParser(true, expand, analyzer);
+            parser.parse(rules);
+            return parser.build();
+        } finally {
+            analyzer.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: SynonymDictionaryCompiler <rules> <output> [--lowercase] [--no-expand]");
+            System.exit(1);
+        }
+        boolean lowercase = false;
+        boolean expand = true;
+        for (int i = 2; i < args.length; i++) {
+            if ("--lowercase".equals(args[i])) {
+                lowercase = true;
+            } else if ("--no-expand".equals(args[i])) {
+                expand = false;
+            } else {
+                throw new IllegalArgumentException("unknown option [" + args[i] + "]");
+            }
+        }
+        final Path output = Paths.get(args[1]).toAbsolutePath();
+        final long start = System.nanoTime();
+        final SynonymMap map;
+        try (Reader rules = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            map = compile(rules, lowercase, expand);
+        }
+        SynonymDictionary.write(map, output);
+        System.out.println("wrote " + output + " (" + Files.size(output) + " bytes, " + map.words.size()
+                + " words) in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
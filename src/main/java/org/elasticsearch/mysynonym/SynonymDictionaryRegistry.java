@@ -0,0 +1,216 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.watcher.FileChangesListener;
+import org.elasticsearch.watcher.FileWatcher;
+import org.elasticsearch.watcher.ResourceWatcherService;
+import org.elasticsearch.watcher.WatcherHandle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Node level registry of the loaded {@link SynonymDictionary} files. All the indices that
+ * use the same dictionary file share one {@link Entry}. The entry records the indices it was
+ * acquired for and is unloaded once the last of them is closed or deleted, see
+ * {@link #release(Index)}.
+ *
+ * Once a {@link ResourceWatcherService} is set, the files are watched and reloaded when
+ * they change. The new dictionary is loaded on the watcher thread and then published
+ * with a single volatile write, token streams pick it up the next time they are reset
+ * and streams that are running keep reading from their snapshot.
+ */
+public final class SynonymDictionaryRegistry implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(SynonymDictionaryRegistry.class);
+
+    private final Map<Path, Entry> entries = new HashMap<>();
+    private ResourceWatcherService watcherService;
+    private boolean closed;
+
+    /**
+     * Returns the entry of the file for the token filters of the index, loading it the first
+     * time it is requested. The entry stays loaded until {@link #release(Index)} is called for
+     * every index that acquired it.
+     */
+    public synchronized Entry acquire(Path path, Index index) {
+        if (closed) {
+            throw new IllegalStateException("synonym dictionary registry is closed");
+        }
+        final Path key = path.toAbsolutePath().normalize();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            try {
+                entry = new Entry(key, SynonymDictionary.open(key, 0));
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to load synonym dictionary [" + key + "]", e);
+            }
+            entries.put(key, entry);
+            watch(entry);
+        }
+        entry.indices.add(index);
+        return entry;
+    }
+
+    /**
+     * Called when the index is closed or deleted on this node, unloads the dictionaries that
+     * no other index uses. Token streams that are still running keep their own reference.
+     */
+    public synchronized void release(Index index) {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.indices.remove(index) && entry.indices.isEmpty()) {
+                it.remove();
+                entry.close();
+                logger.debug("unloaded synonym dictionary [{}], no index uses it anymore", entry.path);
+            }
+        }
+    }
+
+    /** Starts watching the loaded files, and the ones loaded later, for changes. */
+    public synchronized void setResourceWatcherService(ResourceWatcherService watcherService) {
+        this.watcherService = watcherService;
+        for (Entry entry : entries.values()) {
+            watch(entry);
+        }
+    }
+
+    private void watch(Entry entry) {
+        if (watcherService == null || entry.watcherHandle != null) {
+            return;
+        }
+        FileWatcher watcher = new FileWatcher(entry.path);
+        watcher.addListener(new FileChangesListener() {
+            @Override
+            public void onFileCreated(Path file) {
+                reload(entry);
+            }
+
+            @Override
+            public void onFileChanged(Path file) {
+                reload(entry);
+            }
+        });
+        try {
+            entry.watcherHandle = watcherService.add(watcher, ResourceWatcherService.Frequency.MEDIUM);
+        } catch (IOException e) {
+            logger.warn(new ParameterizedMessage("failed to watch synonym dictionary [{}]", entry.path), e);
+        }
+    }
+
+    private void reload(Entry entry) {
+        final boolean reloaded;
+        try {
+            reloaded = entry.reload();
+        } catch (Exception e) {
+            // a file that is being written fails the checksum, the next change triggers another reload
+            logger.warn(new ParameterizedMessage("failed to reload synonym dictionary [{}], keeping generation [{}]",
+                    entry.path, entry.generation()), e);
+            return;
+        }
+        if (reloaded) {
+            logger.info("reloaded synonym dictionary [{}], generation [{}]", entry.path, entry.generation());
+        } else {
+            logger.debug("synonym dictionary [{}] was unloaded while it was reloaded", entry.path);
+        }
+    }
+
+    public synchronized int count() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        List<Entry> toClose = new ArrayList<>(entries.values());
+        entries.clear();
+        for (Entry entry : toClose) {
+            entry.close();
+        }
+    }
+
+    /**
+     * The current version of one dictionary file.
+     */
+    public static final class Entry {
+        private final Path path;
+        // the indices whose token filters use the entry, guarded by the registry
+        private final Set<Index> indices = new HashSet<>();
+        private volatile SynonymDictionary current;
+        private volatile WatcherHandle<FileWatcher> watcherHandle;
+        // stopping the watcher does not stop a check that is running, guarded by the entry
+        private boolean closed;
+
+        Entry(Path path, SynonymDictionary dictionary) {
+            this.path = path;
+            this.current = dictionary;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public long generation() {
+            return current.generation();
+        }
+
+        /**
+         * Returns the current dictionary with a reference that the caller must release with
+         * {@link SynonymDictionary#decRef()}.
+         */
+        public SynonymDictionary acquire() {
+            while (true) {
+                SynonymDictionary dictionary = current;
+                if (dictionary.tryIncRef()) {
+                    return dictionary;
+                }
+                if (dictionary == current) {
+                    throw new IllegalStateException("synonym dictionary [" + path + "] is closed");
+                }
+                // a reload released the dictionary in between, retry with the new one
+            }
+        }
+
+        /**
+         * Loads the file again and publishes it, the previous version is released. Returns
+         * false if the entry was closed in the meantime, the new version is then released too.
+         */
+        boolean reload() throws IOException {
+            final SynonymDictionary reloaded = SynonymDictionary.open(path, current.generation() + 1);
+            final SynonymDictionary previous;
+            synchronized (this) {
+                if (closed) {
+                    previous = reloaded;
+                } else {
+                    previous = current;
+                    current = reloaded;
+                }
+            }
+            previous.decRef();
+            return previous != reloaded;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (watcherHandle != null) {
+                watcherHandle.stop();
+            }
+            current.decRef();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+import org.elasticsearch.index.analysis.AnalyzerComponentsProvider;
+import org.elasticsearch.index.analysis.NamedAnalyzer;
+import org.elasticsearch.index.analysis.TokenFilterFactory;
+
+import java.nio.file.Path;
+
+/**
+ * Token filter that applies a compiled synonym dictionary, shared by all indices of the
+ * node through the {@link SynonymDictionaryRegistry}.
+ *
+ * <pre>
+ * "filter": {
+ *   "my_synonyms": {
+ *     "type": "synonym_dictionary",
+ *     "dictionary_path": "analysis/synonyms.fst",
+ *     "ignore_case": true
+ *   }
+ * }
+ * </pre>
+ *
+ * The filter is a {@link SynonymGraphFilter}, injected tokens have the {@code SYNONYM}
+ * type that {@link SynonymMatchQuery} relies on. When the file is replaced the filter
+ * switches to the new rules without reopening the index, see {@link ReloadableSynonymGraphFilter}.
+ */
+public class SynonymDictionaryTokenFilterFactory extends AbstractTokenFilterFactory {
+
+    public static final String NAME = "synonym_dictionary";
+
+    private final SynonymDictionaryRegistry.Entry dictionary;
+    private final boolean ignoreCase;
+
+    public SynonymDictionaryTokenFilterFactory(IndexSettings indexSettings, Environment environment, String name,
+                                               Settings settings, SynonymDictionaryRegistry registry) {
+        super(indexSettings, name, settings);
+        final String dictionaryPath = settings.get("dictionary_path");
+        if (dictionaryPath == null) {
+            throw new IllegalArgumentException("[" + NAME + "] token filter [" + name + "] requires [dictionary_path]");
+        }
+        // relative paths are resolved against the config directory, like synonyms_path
+        final Path path = environment.configFile().resolve(dictionaryPath);
+        this.dictionary = registry.acquire(path, indexSettings.getIndex());
+        this.ignoreCase = settings.getAsBoolean("ignore_case", false);
+    }
+
+    /**
+     * Sum of the generations of the {@code synonym_dictionary} filters of the analyzer. A
+     * reload increments the generation of one dictionary, so the sum changes exactly when the
+     * output of the analyzer may have changed. Analyzers without such a filter are at 0.
+     */
+    public static long dictionaryGeneration(Analyzer analyzer) {
+        while (analyzer instanceof NamedAnalyzer) {
+            analyzer = ((NamedAnalyzer) analyzer).analyzer();
+        }
+        if (analyzer instanceof AnalyzerComponentsProvider == false) {
+            return 0;
+        }
+        long generation = 0;
+        for (TokenFilterFactory filter : ((AnalyzerComponentsProvider) analyzer).getComponents().getTokenFilters()) {
+            if (filter instanceof SynonymDictionaryTokenFilterFactory) {
+                generation += ((SynonymDictionaryTokenFilterFactory) filter).dictionary.generation();
+            }
+        }
+        return generation;
+    }
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new ReloadableSynonymGraphFilter(tokenStream, dictionary, ignoreCase);
+    }
+
+    @Override
+    public TokenFilterFactory getSynonymFilter() {
+        // the rules of the dictionary are already analyzed
+        return IDENTITY_FILTER;
+    }
+}
@@ -0,0 +1,143 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.RunAutomaton;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Node level cache of the Levenshtein automata of {@link SynonymFuzzyQuery}, keyed by
+ * (term, edits, prefix length, transpositions). Popular misspellings are typed again and
+ * again, with the cache their automata are compiled once per node instead of once per
+ * segment of every shard request.
+ *
+ * An entry holds up to three automata with their transition tables, whose size grows with
+ * the term length and the edit distance, so the cache is bounded by the memory of the
+ * entries rather than by their number.
+ */
+public final class SynonymFuzzyAutomatonCache {
+
+    public static final Setting<ByteSizeValue> CACHE_SIZE_SETTING =
+            Setting.memorySizeSetting("synonym_match.fuzzy_cache.size", "1%", Property.NodeScope);
+
+    private final Cache<Key, CompiledAutomaton[]> cache;
+
+    public SynonymFuzzyAutomatonCache(Settings settings) {
+        this.cache = CacheBuilder.<Key, CompiledAutomaton[]>builder()
+                .setMaximumWeight(CACHE_SIZE_SETTING.get(settings).getBytes())
+                .weigher((key, value) -> key.ramBytesUsed() + ramBytesUsed(value))
+                .build();
+    }
+
+    /** Returns the automata accepting the term with 0 to {@code maxEdits} edits. */
+    public CompiledAutomaton[] getOrCompile(BytesRef term, int maxEdits, int prefixLength, boolean transpositions) {
+        try {
+            return cache.computeIfAbsent(new Key(BytesRef.deepCopyOf(term), maxEdits, prefixLength, transpositions),
+                    key -> SynonymFuzzyQuery.compile(key.term, key.maxEdits, key.prefixLength, key.transpositions));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error compiling fuzzy automata", e.getCause());
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long hits() {
+        return cache.stats().getHits();
+    }
+
+    public long misses() {
+        return cache.stats().getMisses();
+    }
+
+    public long evictions() {
+        return cache.stats().getEvictions();
+    }
+
+    public int count() {
+        return cache.count();
+    }
+
+    public long weight() {
+        return cache.weight();
+    }
+
+    /** CompiledAutomaton is not Accountable, the run automaton is sized from its tables. */
+    static long ramBytesUsed(CompiledAutomaton[] automata) {
+        long bytes = RamUsageEstimator.shallowSizeOf(automata);
+        for (CompiledAutomaton automaton : automata) {
+            bytes += 64;
+            if (automaton.automaton != null) {
+                bytes += automaton.automaton.ramBytesUsed();
+            }
+            if (automaton.runAutomaton != null) {
+                bytes += ramBytesUsed(automaton.runAutomaton);
+            }
+            if (automaton.term != null) {
+                bytes += automaton.term.length;
+            }
+            if (automaton.commonSuffixRef != null) {
+                bytes += automaton.commonSuffixRef.length;
+            }
+        }
+        return bytes;
+    }
+
+    private static long ramBytesUsed(RunAutomaton runAutomaton) {
+        final long states = runAutomaton.getSize();
+        final long points = runAutomaton.getCharIntervals().length;
+        // transitions per state and character class, accept states, points and the byte class map
+        return 64 + 4 * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + Integer.BYTES * (states * points + points + 256) + states / 8 + 8;
+    }
+
+    private static final class Key {
+        private final BytesRef term;
+        private final int maxEdits;
+        private final int prefixLength;
+        private final boolean transpositions;
+        private final int hashCode;
+
+        Key(BytesRef term, int maxEdits, int prefixLength, boolean transpositions) {
+            this.term = term;
+            this.maxEdits = maxEdits;
+            this.prefixLength = prefixLength;
+            this.transpositions = transpositions;
+            this.hashCode = Objects.hash(term, maxEdits, prefixLength, transpositions);
+        }
+
+        long ramBytesUsed() {
+            return 64 + term.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key other = (Key) o;
+            return maxEdits == other.maxEdits &&
+                    prefixLength == other.prefixLength &&
+                    transpositions == other.transpositions &&
+                    term.equals(other.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
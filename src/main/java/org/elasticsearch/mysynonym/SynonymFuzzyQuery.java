@@ -0,0 +1,141 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.index.FilteredTermsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BoostAttribute;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Fuzzy query on an original term of a synonym_match position. It matches and scores like
+ * {@link org.apache.lucene.search.FuzzyQuery}: every matching term is boosted by its edit
+ * distance and the {@code maxExpansions} best terms are blended. The Levenshtein automata
+ * are taken from the {@link SynonymFuzzyAutomatonCache} of the node, if any, instead of
+ * being built again for every segment.
+ */
+public final class SynonymFuzzyQuery extends MultiTermQuery {
+
+    private final Term term;
+    private final int maxEdits;
+    private final int prefixLength;
+    private final boolean transpositions;
+    // automata[i] accepts the terms within i edits
+    private final CompiledAutomaton[] automata;
+    private final int termLength;
+
+    public SynonymFuzzyQuery(Term term, int maxEdits, int prefixLength, int maxExpansions, boolean transpositions,
+                             @Nullable SynonymFuzzyAutomatonCache cache) {
+        super(term.field());
+        if (maxEdits < 1 || maxEdits > LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
+            throw new IllegalArgumentException("maxEdits must be between 1 and " + LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE);
+        }
+        if (prefixLength < 0) {
+            throw new IllegalArgumentException("prefixLength cannot be negative");
+        }
+        this.term = term;
+        this.maxEdits = maxEdits;
+        this.prefixLength = prefixLength;
+        this.transpositions = transpositions;
+        this.automata = cache == null ? compile(term.bytes(), maxEdits, prefixLength, transpositions)
+                : cache.getOrCompile(term.bytes(), maxEdits, prefixLength, transpositions);
+        this.termLength = UnicodeUtil.codePointCount(term.bytes());
+        setRewriteMethod(new TopTermsBlendedFreqScoringRewrite(maxExpansions));
+    }
+
+    static CompiledAutomaton[] compile(BytesRef term, int maxEdits, int prefixLength, boolean transpositions) {
+        final int[] codePoints = term.utf8ToString().codePoints().toArray();
+        final int prefix = Math.min(prefixLength, codePoints.length);
+        final String prefixString = UnicodeUtil.newString(codePoints, 0, prefix);
+        LevenshteinAutomata builder = new LevenshteinAutomata(
+                UnicodeUtil.newString(codePoints, prefix, codePoints.length - prefix), transpositions);
+        CompiledAutomaton[] automata = new CompiledAutomaton[maxEdits + 1];
+        for (int edits = 0; edits <= maxEdits; edits++) {
+            automata[edits] = new CompiledAutomaton(builder.toAutomaton(edits, prefixString), true, false);
+        }
+        return automata;
+    }
+
+    public Term getTerm() {
+        return term;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    @Override
+    protected TermsEnum getTermsEnum(Terms terms, AttributeSource atts) throws IOException {
+        return new FilteredTermsEnum(automata[maxEdits].getTermsEnum(terms), false) {
+            private final BoostAttribute boostAtt = attributes().addAttribute(BoostAttribute.class);
+
+            @Override
+            protected AcceptStatus accept(BytesRef candidate) {
+                int edits = 0;
+                while (edits < maxEdits && accepts(automata[edits], candidate) == false) {
+                    edits++;
+                }
+                // same similarity as FuzzyTermsEnum
+                final int length = Math.max(1, Math.min(UnicodeUtil.codePointCount(candidate), termLength));
+                boostAtt.setBoost(Math.max(0f, 1f - (float) edits / length));
+                return AcceptStatus.YES;
+            }
+        };
+    }
+
+    private static boolean accepts(CompiledAutomaton automaton, BytesRef term) {
+        switch (automaton.type) {
+            case NONE:
+                return false;
+            case ALL:
+                return true;
+            case SINGLE:
+                return automaton.term.bytesEquals(term);
+            default:
+                return automaton.runAutomaton.run(term.bytes, term.offset, term.length);
+        }
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        if (visitor.acceptField(field)) {
+            visitor.visitLeaf(this);
+        }
+    }
+
+    @Override
+    public String toString(String field) {
+        StringBuilder builder = new StringBuilder();
+        if (term.field().equals(field) == false) {
+            builder.append(term.field()).append(':');
+        }
+        return builder.append(term.text()).append('~').append(maxEdits).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (super.equals(o) == false) {
+            return false;
+        }
+        SynonymFuzzyQuery other = (SynonymFuzzyQuery) o;
+        return maxEdits == other.maxEdits &&
+                prefixLength == other.prefixLength &&
+                transpositions == other.transpositions &&
+                term.equals(other.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(term, maxEdits, prefixLength, transpositions);
+    }
+}
@@ -0,0 +1,37 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+
+/**
+ * Marks the terms injected by a synonym filter with a one byte payload, original terms
+ * have no payload. The marks let {@link SynonymMatchQuery} tell an original match from a
+ * synonym match without expanding the query, see {@link SynonymPayloadDecoder}.
+ */
+final class SynonymMarkerFilter extends TokenFilter {
+
+    /** payload of a term that was injected by a synonym filter */
+    static final BytesRef SYNONYM_PAYLOAD = new BytesRef(new byte[] { TermType.SYNONYM });
+
+    private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+    private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+
+    SynonymMarkerFilter(TokenStream input) {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (input.incrementToken() == false) {
+            return false;
+        }
+        // the payloads of the field belong to the marks, clear the ones of other filters
+        payloadAtt.setPayload(TermType.of(typeAtt.type()) == TermType.SYNONYM ? SYNONYM_PAYLOAD : null);
+        return true;
+    }
+}
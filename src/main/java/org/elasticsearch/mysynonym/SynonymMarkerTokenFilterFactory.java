@@ -0,0 +1,34 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.AbstractTokenFilterFactory;
+
+/**
+ * Records at index time whether a term comes from the text or from a synonym, so that
+ * {@code "synonym_scoring": "index_time"} can down-weight synonym matches with one query
+ * per position. Goes right after the synonym filter of the index analyzer:
+ *
+ * <pre>
+ * "analyzer": {
+ *   "marked_synonyms": {
+ *     "tokenizer": "whitespace",
+ *     "filter": ["synonym", "synonym_marker"]
+ *   }
+ * }
+ * </pre>
+ */
+public class SynonymMarkerTokenFilterFactory extends AbstractTokenFilterFactory {
+
+    public static final String NAME = "synonym_marker";
+
+    public SynonymMarkerTokenFilterFactory(IndexSettings indexSettings, String name, Settings settings) {
+        super(indexSettings, name, settings);
+    }
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new SynonymMarkerFilter(tokenStream);
+    }
+}
@@ -0,0 +1,34 @@
+package org.elasticsearch.mysynonym;
+
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+
+/**
+ * Gives synonym_match the request circuit breaker of the node. Plugins only get the
+ * {@link CircuitBreakerService} by injection, so this component is created by the node
+ * and hands the breaker service to the {@link SynonymMatchServices} of the node.
+ */
+public final class SynonymMatchBreakerService extends AbstractLifecycleComponent {
+
+    private final SynonymMatchServices services;
+
+    @Inject
+    public SynonymMatchBreakerService(CircuitBreakerService breakerService, SynonymMatchServices services) {
+        this.services = services;
+        services.setBreakerService(breakerService);
+    }
+
+    @Override
+    protected void doStart() {
+    }
+
+    @Override
+    protected void doStop() {
+    }
+
+    @Override
+    protected void doClose() {
+        services.setBreakerService(null);
+    }
+}
@@ -1,19 +1,33 @@
 package org.elasticsearch.mysynonym;
 
 
+import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.SetOnce;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.ParsingException;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.unit.Fuzziness;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryRewriteContext;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.query.QueryShardException;
+import org.elasticsearch.mysynonym.action.SynonymExpandAction;
+import org.elasticsearch.mysynonym.action.SynonymExpandRequest;
+import org.elasticsearch.mysynonym.action.SynonymExpandResponse;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * Match query is a query that analyzes the text and constructs a query as the
@@ -32,6 +46,21 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
     public static final ParseField ANALYZER_FIELD = new ParseField("synonym_analyzer");
     public static final ParseField SYNONYM_BOOST_FIELD = new ParseField("synonym_type_boost");
     public static final ParseField ZERO_TERMS_QUERY_FIELD = new ParseField("zero_terms_query");
+    public static final ParseField PRE_ANALYZE_INDEX_FIELD = new ParseField("pre_analyze_index");
+    public static final ParseField SYNONYM_SCORING_FIELD = new ParseField("synonym_scoring");
+    public static final ParseField OPERATOR_FIELD = new ParseField("operator");
+    public static final ParseField MINIMUM_SHOULD_MATCH_FIELD = new ParseField("minimum_should_match");
+    public static final ParseField MAX_SYNONYMS_PER_POSITION_FIELD = new ParseField("max_synonyms_per_position");
+    public static final ParseField MAX_SYNONYM_DOC_FREQ_RATIO_FIELD = new ParseField("max_synonym_doc_freq_ratio");
+    public static final ParseField MAX_GRAPH_PATHS_FIELD = new ParseField("max_graph_paths");
+    public static final ParseField DIAGNOSTICS_FIELD = new ParseField("diagnostics");
+    public static final ParseField MATCH_LABELS_FIELD = new ParseField("match_labels");
+    public static final ParseField MAX_QUERY_TERMS_FIELD = new ParseField("max_query_terms");
+    public static final ParseField PREFIX_LENGTH_FIELD = new ParseField("prefix_length");
+    public static final ParseField MAX_EXPANSIONS_FIELD = new ParseField("max_expansions");
+
+    /** The default mode terms are combined in a match query */
+    public static final Operator DEFAULT_OPERATOR = Operator.OR;
 
     /** The name for the match query */
     public static final String NAME = "synonym_match";
@@ -40,9 +69,33 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
     private final String fieldName;
     private final Object value;
     private String analyzer;
+    private Operator operator = DEFAULT_OPERATOR;
+    private String minimumShouldMatch;
     protected SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery = SynonymMatchQuery.DEFAULT_ZERO_TERMS_QUERY;
     // 同义词贡献 得分 为 0 是理想的情况
     private float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+    private SynonymMatchQuery.SynonymScoring synonymScoring = SynonymMatchQuery.DEFAULT_SYNONYM_SCORING;
+    // 高频同义词的 postings 很长，按 shard 上的 doc freq 裁剪
+    private Integer maxSynonymsPerPosition;
+    private int maxGraphPaths = SynonymMatchQuery.DEFAULT_MAX_GRAPH_PATHS;
+    private Float maxSynonymDocFreqRatio;
+    // 在协调节点上用该 index 的 analyzer 分词一次，分词结果随 query 发送到各个 shard
+    private String preAnalyzeIndex;
+    // 在 profile 结果中输出分词耗时和每个 position 上的原始词、同义词
+    private boolean diagnostics;
+    // 在 matched_queries 中返回每个 position 是原始词命中还是同义词命中，代替 explain
+    private boolean matchLabels;
+    // 长文本（以文档作为查询）只保留 tf-idf 最高的若干个 position
+    private Integer maxQueryTerms;
+    // 只对原始词做模糊匹配，同义词始终精确匹配
+    private Fuzziness fuzziness;
+    private int prefixLength = FuzzyQuery.defaultPrefixLength;
+    private int maxExpansions = FuzzyQuery.defaultMaxExpansions;
+    private AnalyzedText analyzedText;
+    // the index and the analyzer the terms were resolved with, only shards that analyze the same way use them
+    private String analyzedIndexUUID;
+    private String analyzedWith;
+    private final Supplier<SynonymExpandResponse> analyzedTextSupplier;
 
 
 
@@ -62,6 +115,37 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         }
         this.fieldName = fieldName;
         this.value = value;
+        this.analyzedTextSupplier = null;
+    }
+
+    private SynonymMatchBuilder(SynonymMatchBuilder other, SynonymExpandResponse resolved,
+                                Supplier<SynonymExpandResponse> analyzedTextSupplier) {
+        this.fieldName = other.fieldName;
+        this.value = other.value;
+        this.analyzer = other.analyzer;
+        this.operator = other.operator;
+        this.minimumShouldMatch = other.minimumShouldMatch;
+        this.zeroTermsQuery = other.zeroTermsQuery;
+        this.synonym_type_boost = other.synonym_type_boost;
+        this.synonymScoring = other.synonymScoring;
+        this.maxSynonymsPerPosition = other.maxSynonymsPerPosition;
+        this.maxSynonymDocFreqRatio = other.maxSynonymDocFreqRatio;
+        this.maxGraphPaths = other.maxGraphPaths;
+        this.preAnalyzeIndex = other.preAnalyzeIndex;
+        this.diagnostics = other.diagnostics;
+        this.matchLabels = other.matchLabels;
+        this.maxQueryTerms = other.maxQueryTerms;
+        this.fuzziness = other.fuzziness;
+        this.prefixLength = other.prefixLength;
+        this.maxExpansions = other.maxExpansions;
+        if (resolved != null) {
+            this.analyzedText = resolved.expansions().get(0);
+            this.analyzedIndexUUID = resolved.indexUUID();
+            this.analyzedWith = resolved.analyzer();
+        }
+        this.analyzedTextSupplier = analyzedTextSupplier;
+        this.boost = other.boost;
+        this.queryName = other.queryName;
     }
 
     /**
@@ -75,16 +159,57 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         // optional fields
         analyzer = in.readOptionalString();
         synonym_type_boost = in.readFloat();
+        synonymScoring = SynonymMatchQuery.SynonymScoring.readFromStream(in);
+        operator = Operator.readFromStream(in);
+        minimumShouldMatch = in.readOptionalString();
+        maxSynonymsPerPosition = in.readOptionalVInt();
+        maxSynonymDocFreqRatio = in.readOptionalFloat();
+        maxGraphPaths = in.readVInt();
+        preAnalyzeIndex = in.readOptionalString();
+        diagnostics = in.readBoolean();
+        matchLabels = in.readBoolean();
+        maxQueryTerms = in.readOptionalVInt();
+        fuzziness = in.readOptionalWriteable(Fuzziness::new);
+        prefixLength = in.readVInt();
+        maxExpansions = in.readVInt();
+        analyzedText = in.readOptionalWriteable(AnalyzedText::readFrom);
+        if (analyzedText != null) {
+            analyzedIndexUUID = in.readString();
+            analyzedWith = in.readOptionalString();
+        }
+        analyzedTextSupplier = null;
     }
 
     @Override
     protected void doWriteTo(StreamOutput out) throws IOException {
+        if (analyzedTextSupplier != null) {
+            throw new IllegalStateException("analyzed text supplier must be null, can't serialize suppliers, " +
+                    "missing a rewriteAndFetch?");
+        }
         out.writeString(fieldName);
         out.writeGenericValue(value);
         zeroTermsQuery.writeTo(out);
         // optional fields
         out.writeOptionalString(analyzer);
         out.writeFloat(synonym_type_boost);
+        synonymScoring.writeTo(out);
+        operator.writeTo(out);
+        out.writeOptionalString(minimumShouldMatch);
+        out.writeOptionalVInt(maxSynonymsPerPosition);
+        out.writeOptionalFloat(maxSynonymDocFreqRatio);
+        out.writeVInt(maxGraphPaths);
+        out.writeOptionalString(preAnalyzeIndex);
+        out.writeBoolean(diagnostics);
+        out.writeBoolean(matchLabels);
+        out.writeOptionalVInt(maxQueryTerms);
+        out.writeOptionalWriteable(fuzziness);
+        out.writeVInt(prefixLength);
+        out.writeVInt(maxExpansions);
+        out.writeOptionalWriteable(analyzedText);
+        if (analyzedText != null) {
+            out.writeString(analyzedIndexUUID);
+            out.writeOptionalString(analyzedWith);
+        }
     }
 
     /** Returns the field name used in this query. */
@@ -97,6 +222,31 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         return this.value;
     }
 
+    /** Sets the operator to use when combining the positions of the analyzed query text. Defaults to {@code OR}. */
+    public SynonymMatchBuilder operator(Operator operator) {
+        if (operator == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires operator to be non-null");
+        }
+        this.operator = operator;
+        return this;
+    }
+
+    /** Returns the operator to use in a boolean query.*/
+    public Operator operator() {
+        return this.operator;
+    }
+
+    /** Sets optional minimumShouldMatch value to apply to the query */
+    public SynonymMatchBuilder minimumShouldMatch(String minimumShouldMatch) {
+        this.minimumShouldMatch = minimumShouldMatch;
+        return this;
+    }
+
+    /** Gets the minimumShouldMatch value */
+    public String minimumShouldMatch() {
+        return this.minimumShouldMatch;
+    }
+
     /**
      * Sets query to use in case no query terms are available, e.g. after analysis removed them.
      * Defaults to {@link SynonymMatchQuery.ZeroTermsQuery#NONE}, but can be set to
@@ -141,6 +291,174 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         return this.synonym_type_boost;
     }
 
+    /**
+     * Sets how synonym matches are scored. {@link SynonymMatchQuery.SynonymScoring#CONSTANT} scores
+     * a synonym match with a constant, which lets top hits collection skip documents that only
+     * match synonyms.
+     */
+    public SynonymMatchBuilder synonymScoring(SynonymMatchQuery.SynonymScoring synonymScoring) {
+        if (synonymScoring == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires synonymScoring to be non-null");
+        }
+        this.synonymScoring = synonymScoring;
+        return this;
+    }
+
+    public SynonymMatchQuery.SynonymScoring synonymScoring() {
+        return this.synonymScoring;
+    }
+
+    /** Keeps at most this many synonyms per position, the ones with the lowest document frequency. */
+    public SynonymMatchBuilder maxSynonymsPerPosition(Integer maxSynonymsPerPosition) {
+        if (maxSynonymsPerPosition != null && maxSynonymsPerPosition < 0) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max_synonyms_per_position to be non-negative");
+        }
+        this.maxSynonymsPerPosition = maxSynonymsPerPosition;
+        return this;
+    }
+
+    public Integer maxSynonymsPerPosition() {
+        return this.maxSynonymsPerPosition;
+    }
+
+    /** Drops the synonyms that occur in more than this fraction of the documents of a shard. */
+    public SynonymMatchBuilder maxSynonymDocFreqRatio(Float maxSynonymDocFreqRatio) {
+        if (maxSynonymDocFreqRatio != null && (maxSynonymDocFreqRatio < 0 || maxSynonymDocFreqRatio > 1)) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max_synonym_doc_freq_ratio to be in [0, 1]");
+        }
+        this.maxSynonymDocFreqRatio = maxSynonymDocFreqRatio;
+        return this;
+    }
+
+    public Float maxSynonymDocFreqRatio() {
+        return this.maxSynonymDocFreqRatio;
+    }
+
+    /**
+     * Maximum number of paths of a multi-token synonym graph that are matched as separate
+     * phrases, larger graphs are matched term by term. Defaults to {@code 64}.
+     */
+    public SynonymMatchBuilder maxGraphPaths(int maxGraphPaths) {
+        if (maxGraphPaths < 1) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max_graph_paths to be positive");
+        }
+        this.maxGraphPaths = maxGraphPaths;
+        return this;
+    }
+
+    public int maxGraphPaths() {
+        return this.maxGraphPaths;
+    }
+
+    /**
+     * Analyzes the query text once for all shards instead of once per shard: the coordinating
+     * node has a copy of the given index expand the text with the analyzer the shards would
+     * use, synonym_analyzer or the search analyzer of the field. Shards then build the query
+     * from the resolved terms.
+     */
+    public SynonymMatchBuilder preAnalyzeIndex(String preAnalyzeIndex) {
+        this.preAnalyzeIndex = preAnalyzeIndex;
+        return this;
+    }
+
+    public String preAnalyzeIndex() {
+        return this.preAnalyzeIndex;
+    }
+
+    /**
+     * Attaches the analysis time, the expanded terms of each position with their type and
+     * the pruned synonyms to the query, so that they show up in the profile output.
+     */
+    public SynonymMatchBuilder diagnostics(boolean diagnostics) {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
+    public boolean diagnostics() {
+        return this.diagnostics;
+    }
+
+    /**
+     * Reports in the {@code matched_queries} of each hit which positions matched an original
+     * term and which matched a synonym, e.g. {@code content:1:class:synonym}. The labels are
+     * prefixed with the query name, or the field name if the query has no name.
+     */
+    public SynonymMatchBuilder matchLabels(boolean matchLabels) {
+        this.matchLabels = matchLabels;
+        return this;
+    }
+
+    public boolean matchLabels() {
+        return this.matchLabels;
+    }
+
+    /**
+     * Document as query: a text with more positions than this only keeps the distinct
+     * positions with the highest tf-idf on the shard, like more_like_this.
+     */
+    public SynonymMatchBuilder maxQueryTerms(Integer maxQueryTerms) {
+        if (maxQueryTerms != null && maxQueryTerms < 1) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max_query_terms to be positive");
+        }
+        this.maxQueryTerms = maxQueryTerms;
+        return this;
+    }
+
+    public Integer maxQueryTerms() {
+        return this.maxQueryTerms;
+    }
+
+    /** The original terms also match terms within this edit distance, synonyms never do. */
+    public SynonymMatchBuilder fuzziness(Object fuzziness) {
+        this.fuzziness = fuzziness == null ? null : Fuzziness.build(fuzziness);
+        return this;
+    }
+
+    public Fuzziness fuzziness() {
+        return this.fuzziness;
+    }
+
+    /** Number of leading characters of the original terms that must match exactly with fuzziness. */
+    public SynonymMatchBuilder prefixLength(int prefixLength) {
+        if (prefixLength < 0) {
+            throw new IllegalArgumentException("[" + NAME + "] requires prefix length to be non-negative.");
+        }
+        this.prefixLength = prefixLength;
+        return this;
+    }
+
+    public int prefixLength() {
+        return this.prefixLength;
+    }
+
+    /** Number of terms a fuzzy original term expands to at most. */
+    public SynonymMatchBuilder maxExpansions(int maxExpansions) {
+        if (maxExpansions <= 0) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max expansions to be positive.");
+        }
+        this.maxExpansions = maxExpansions;
+        return this;
+    }
+
+    public int maxExpansions() {
+        return this.maxExpansions;
+    }
+
+    /** Returns the terms resolved on the coordinating node, or {@code null} if the text was not pre-analyzed. */
+    public AnalyzedText analyzedText() {
+        return this.analyzedText;
+    }
+
+    /** Returns the uuid of the index the terms were resolved on, or {@code null} if the text was not pre-analyzed. */
+    public String analyzedIndexUUID() {
+        return this.analyzedIndexUUID;
+    }
+
+    /** Returns the name of the analyzer the terms were resolved with, or {@code null} if the text was not pre-analyzed. */
+    public String analyzedWith() {
+        return this.analyzedWith;
+    }
+
 
     @Override
     public void doXContent(XContentBuilder builder, Params params) throws IOException {
@@ -148,16 +466,83 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         builder.startObject(fieldName);
 
         builder.field(QUERY_FIELD.getPreferredName(), value);
+        builder.field(OPERATOR_FIELD.getPreferredName(), operator.toString());
         if (analyzer != null) {
             builder.field(ANALYZER_FIELD.getPreferredName(), analyzer);
         }
         builder.field(SYNONYM_BOOST_FIELD.getPreferredName(), synonym_type_boost);
+        builder.field(SYNONYM_SCORING_FIELD.getPreferredName(), synonymScoring.toString().toLowerCase(Locale.ROOT));
+        if (minimumShouldMatch != null) {
+            builder.field(MINIMUM_SHOULD_MATCH_FIELD.getPreferredName(), minimumShouldMatch);
+        }
+        if (maxSynonymsPerPosition != null) {
+            builder.field(MAX_SYNONYMS_PER_POSITION_FIELD.getPreferredName(), maxSynonymsPerPosition);
+        }
+        if (maxSynonymDocFreqRatio != null) {
+            builder.field(MAX_SYNONYM_DOC_FREQ_RATIO_FIELD.getPreferredName(), maxSynonymDocFreqRatio);
+        }
+        builder.field(MAX_GRAPH_PATHS_FIELD.getPreferredName(), maxGraphPaths);
         builder.field(ZERO_TERMS_QUERY_FIELD.getPreferredName(), zeroTermsQuery.toString());
+        if (preAnalyzeIndex != null) {
+            builder.field(PRE_ANALYZE_INDEX_FIELD.getPreferredName(), preAnalyzeIndex);
+        }
+        if (diagnostics) {
+            builder.field(DIAGNOSTICS_FIELD.getPreferredName(), diagnostics);
+        }
+        if (matchLabels) {
+            builder.field(MATCH_LABELS_FIELD.getPreferredName(), matchLabels);
+        }
+        if (maxQueryTerms != null) {
+            builder.field(MAX_QUERY_TERMS_FIELD.getPreferredName(), maxQueryTerms);
+        }
+        if (fuzziness != null) {
+            fuzziness.toXContent(builder, params);
+            builder.field(PREFIX_LENGTH_FIELD.getPreferredName(), prefixLength);
+            builder.field(MAX_EXPANSIONS_FIELD.getPreferredName(), maxExpansions);
+        }
         printBoostAndQueryName(builder);
         builder.endObject();
         builder.endObject();
     }
 
+    @Override
+    protected QueryBuilder doRewrite(QueryRewriteContext queryRewriteContext) throws IOException {
+        if (analyzedTextSupplier != null) {
+            SynonymExpandResponse resolved = analyzedTextSupplier.get();
+            return resolved == null ? this : new SynonymMatchBuilder(this, resolved, null);
+        }
+        if (preAnalyzeIndex == null || analyzedText != null || queryRewriteContext.convertToShardContext() != null) {
+            return this;
+        }
+        // we are on the coordinating node, resolve the terms once for all shards. The expansion
+        // runs on a copy of the index with the analyzer the shards would use, the search analyzer
+        // of the field or synonym_analyzer, and comes back as the exact term bytes
+        SetOnce<SynonymExpandResponse> supplier = new SetOnce<>();
+        queryRewriteContext.registerAsyncAction((client, listener) -> {
+            SynonymExpandRequest request = new SynonymExpandRequest(preAnalyzeIndex)
+                    .field(fieldName)
+                    .analyzer(analyzer)
+                    .texts(Collections.singletonList(value.toString()));
+            client.execute(SynonymExpandAction.INSTANCE, request, ActionListener.wrap(response -> {
+                supplier.set(response);
+                listener.onResponse(null);
+            }, listener::onFailure));
+        });
+        return new SynonymMatchBuilder(this, null, supplier::get);
+    }
+
+    /**
+     * Returns the pre-analyzed terms if the shard would analyze the text the same way, the
+     * shards of the other indices of the search analyze it themselves.
+     */
+    private AnalyzedText preAnalyzed(QueryShardContext context, SynonymMatchQuery matchQuery) {
+        if (analyzedText == null || context.index().getUUID().equals(analyzedIndexUUID) == false
+                || analyzedWith == null || analyzedWith.equals(matchQuery.analyzerName(fieldName)) == false) {
+            return null;
+        }
+        return analyzedText;
+    }
+
     @Override
     protected Query doToQuery(QueryShardContext context) throws IOException {
         // validate context specific fields
@@ -165,30 +550,87 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
             throw new QueryShardException(context, "[" + NAME + "] analyzer [" + analyzer + "] not found");
         }
 
-        SynonymMatchQuery matchQuery = new SynonymMatchQuery(context);
+        final long start = System.nanoTime();
+        final SynonymMatchServices services = SynonymMatchServices.of(context);
+        SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, services);
         if (analyzer != null) {
             matchQuery.setAnalyzer(analyzer);
         }
         matchQuery.setSynonym_type_boost(synonym_type_boost);
+        matchQuery.setSynonymScoring(synonymScoring);
+        matchQuery.setOccur(operator.toBooleanClauseOccur());
         matchQuery.setZeroTermsQuery(zeroTermsQuery);
+        matchQuery.setMaxSynonymsPerPosition(maxSynonymsPerPosition);
+        matchQuery.setMaxGraphPaths(maxGraphPaths);
+        matchQuery.setMaxSynonymDocFreqRatio(maxSynonymDocFreqRatio);
+        matchQuery.setMergeRepeatedPositions(minimumShouldMatch == null);
+        matchQuery.setMaxQueryTerms(maxQueryTerms);
+        if (fuzziness != null) {
+            if (synonymScoring == SynonymMatchQuery.SynonymScoring.INDEX_TIME) {
+                throw new IllegalArgumentException("[" + NAME + "] fuzziness is not supported with synonym_scoring [index_time]");
+            }
+            matchQuery.setFuzziness(fuzziness);
+            matchQuery.setFuzzyPrefixLength(prefixLength);
+            matchQuery.setMaxExpansions(maxExpansions);
+        }
         // TODO 这里需要产生 自定义的 termQuery , synonymQuery 、 booleanQuery , 等能被 lucene识别的 query
-        Query query = matchQuery.parse(fieldName, value);
+        Query query;
+        try {
+            query = matchQuery.parse(fieldName, value, preAnalyzed(context, matchQuery));
+            query = Queries.maybeApplyMinimumShouldMatch(query, minimumShouldMatch);
+            if (matchLabels) {
+                matchQuery.addMatchLabels(fieldName, queryName == null ? fieldName : queryName);
+            }
+        } finally {
+            matchQuery.close();
+        }
+        final ExpansionReport report = matchQuery.getExpansionReport();
+        if (query != null && diagnostics) {
+            query = new SynonymMatchReportQuery(query, report.describe());
+        } else if (query != null && report.isEmpty() == false) {
+            // surface the truncated expansion in the profile output
+            query = new SynonymMatchReportQuery(query, report.toString());
+        }
+        final long took = System.nanoTime() - start;
+        SynonymMatchStats stats = services.stats();
+        stats.onReport(report);
+        stats.onQuery(took);
+        SynonymMatchSlowLog.maybeLog(context, took, NAME, "[" + fieldName + "]", value, report);
         return query;
-//        return Queries.maybeApplyMinimumShouldMatch(query, minimumShouldMatch);
     }
 
     @Override
     protected boolean doEquals(SynonymMatchBuilder other) {
         return Objects.equals(fieldName, other.fieldName) &&
                 Objects.equals(value, other.value) &&
+                Objects.equals(operator, other.operator) &&
                 Objects.equals(analyzer, other.analyzer) &&
+                Objects.equals(minimumShouldMatch, other.minimumShouldMatch) &&
                 Objects.equals(zeroTermsQuery, other.zeroTermsQuery) &&
-                Objects.equals(synonym_type_boost, other.synonym_type_boost);
+                Objects.equals(synonym_type_boost, other.synonym_type_boost) &&
+                Objects.equals(synonymScoring, other.synonymScoring) &&
+                Objects.equals(maxSynonymsPerPosition, other.maxSynonymsPerPosition) &&
+                Objects.equals(maxSynonymDocFreqRatio, other.maxSynonymDocFreqRatio) &&
+                maxGraphPaths == other.maxGraphPaths &&
+                Objects.equals(preAnalyzeIndex, other.preAnalyzeIndex) &&
+                diagnostics == other.diagnostics &&
+                matchLabels == other.matchLabels &&
+                Objects.equals(maxQueryTerms, other.maxQueryTerms) &&
+                Objects.equals(fuzziness, other.fuzziness) &&
+                prefixLength == other.prefixLength &&
+                maxExpansions == other.maxExpansions &&
+                Objects.equals(analyzedText, other.analyzedText) &&
+                Objects.equals(analyzedIndexUUID, other.analyzedIndexUUID) &&
+                Objects.equals(analyzedWith, other.analyzedWith) &&
+                Objects.equals(analyzedTextSupplier, other.analyzedTextSupplier);
     }
 
     @Override
     protected int doHashCode() {
-        return Objects.hash(fieldName, value, analyzer, zeroTermsQuery, synonym_type_boost);
+        return Objects.hash(fieldName, value, operator, analyzer, minimumShouldMatch, zeroTermsQuery, synonym_type_boost, synonymScoring,
+                maxSynonymsPerPosition, maxSynonymDocFreqRatio, maxGraphPaths, preAnalyzeIndex,
+                diagnostics, matchLabels, maxQueryTerms, fuzziness, prefixLength, maxExpansions,
+                analyzedText, analyzedIndexUUID, analyzedWith, analyzedTextSupplier);
     }
 
     @Override
@@ -201,7 +643,20 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
         Object value = null;
         float boost = AbstractQueryBuilder.DEFAULT_BOOST;
         float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+        SynonymMatchQuery.SynonymScoring synonymScoring = SynonymMatchQuery.DEFAULT_SYNONYM_SCORING;
         String analyzer = null;
+        Operator operator = DEFAULT_OPERATOR;
+        String minimumShouldMatch = null;
+        Integer maxSynonymsPerPosition = null;
+        Float maxSynonymDocFreqRatio = null;
+        int maxGraphPaths = SynonymMatchQuery.DEFAULT_MAX_GRAPH_PATHS;
+        String preAnalyzeIndex = null;
+        boolean diagnostics = false;
+        boolean matchLabels = false;
+        Integer maxQueryTerms = null;
+        Fuzziness fuzziness = null;
+        int prefixLength = FuzzyQuery.defaultPrefixLength;
+        int maxExpansions = FuzzyQuery.defaultMaxExpansions;
         SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery = SynonymMatchQuery.DEFAULT_ZERO_TERMS_QUERY;
         String queryName = null;
         String currentFieldName = null;
@@ -220,6 +675,16 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
                             value = parser.objectText();
                         } else if (ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                             analyzer = parser.text();
+                        } else if (OPERATOR_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            operator = Operator.fromString(parser.text());
+                        } else if (MINIMUM_SHOULD_MATCH_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            minimumShouldMatch = parser.textOrNull();
+                        } else if (MAX_SYNONYMS_PER_POSITION_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            maxSynonymsPerPosition = parser.intValue();
+                        } else if (MAX_SYNONYM_DOC_FREQ_RATIO_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            maxSynonymDocFreqRatio = parser.floatValue();
+                        } else if (MAX_GRAPH_PATHS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            maxGraphPaths = parser.intValue();
                         } else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                             boost = parser.floatValue();
                         } else if (SYNONYM_BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
@@ -234,6 +699,32 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
                                 throw new ParsingException(parser.getTokenLocation(),
                                         "Unsupported zero_terms_query value [" + zeroTermsValue + "]");
                             }
+                        } else if (SYNONYM_SCORING_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            String synonymScoringValue = parser.text();
+                            if ("blended".equalsIgnoreCase(synonymScoringValue)) {
+                                synonymScoring = SynonymMatchQuery.SynonymScoring.BLENDED;
+                            } else if ("constant".equalsIgnoreCase(synonymScoringValue)) {
+                                synonymScoring = SynonymMatchQuery.SynonymScoring.CONSTANT;
+                            } else if ("index_time".equalsIgnoreCase(synonymScoringValue)) {
+                                synonymScoring = SynonymMatchQuery.SynonymScoring.INDEX_TIME;
+                            } else {
+                                throw new ParsingException(parser.getTokenLocation(),
+                                        "Unsupported synonym_scoring value [" + synonymScoringValue + "]");
+                            }
+                        } else if (PRE_ANALYZE_INDEX_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            preAnalyzeIndex = parser.text();
+                        } else if (DIAGNOSTICS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            diagnostics = parser.booleanValue();
+                        } else if (MATCH_LABELS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            matchLabels = parser.booleanValue();
+                        } else if (MAX_QUERY_TERMS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            maxQueryTerms = parser.intValue();
+                        } else if (Fuzziness.FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            fuzziness = Fuzziness.parse(parser);
+                        } else if (PREFIX_LENGTH_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            prefixLength = parser.intValue();
+                        } else if (MAX_EXPANSIONS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            maxExpansions = parser.intValue();
                         } else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                             queryName = parser.text();
                         } else {
@@ -258,11 +749,24 @@ public class SynonymMatchBuilder extends AbstractQueryBuilder<SynonymMatchBuilde
 
         // TODO 这里需要做的是组件这些从请求中传递的参数，组成 Query
         SynonymMatchBuilder matchQueryBuilder = new SynonymMatchBuilder(fieldName, value);
+        matchQueryBuilder.operator(operator);
         matchQueryBuilder.analyzer(analyzer);
+        matchQueryBuilder.minimumShouldMatch(minimumShouldMatch);
+        matchQueryBuilder.maxSynonymsPerPosition(maxSynonymsPerPosition);
+        matchQueryBuilder.maxSynonymDocFreqRatio(maxSynonymDocFreqRatio);
+        matchQueryBuilder.maxGraphPaths(maxGraphPaths);
         matchQueryBuilder.zeroTermsQuery(zeroTermsQuery);
         matchQueryBuilder.queryName(queryName);
         matchQueryBuilder.boost(boost);
         matchQueryBuilder.synonym_type_boost(synonym_type_boost);
+        matchQueryBuilder.synonymScoring(synonymScoring);
+        matchQueryBuilder.preAnalyzeIndex(preAnalyzeIndex);
+        matchQueryBuilder.diagnostics(diagnostics);
+        matchQueryBuilder.matchLabels(matchLabels);
+        matchQueryBuilder.maxQueryTerms(maxQueryTerms);
+        matchQueryBuilder.fuzziness(fuzziness);
+        matchQueryBuilder.prefixLength(prefixLength);
+        matchQueryBuilder.maxExpansions(maxExpansions);
         return matchQueryBuilder;
     }
 
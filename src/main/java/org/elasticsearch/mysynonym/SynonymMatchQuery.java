@@ -1,25 +1,51 @@
 package org.elasticsearch.mysynonym;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.CachingTokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.tokenattributes.PackedTokenAttributeImpl;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
 import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.queries.payloads.MaxPayloadFunction;
+import org.apache.lucene.queries.payloads.PayloadScoreQuery;
+import org.apache.lucene.queries.payloads.SpanPayloadCheckQuery;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.spans.SpanOrQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.index.analysis.NamedAnalyzer;
 import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
 import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.search.QueryParserHelper;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 import static org.elasticsearch.common.lucene.search.Queries.newUnmappedFieldQuery;
 
@@ -29,7 +55,21 @@ import static org.elasticsearch.common.lucene.search.Queries.newUnmappedFieldQue
  * @Date 2021/6/17 19:32
  * @Created by muhao
  */
-public class SynonymMatchQuery {
+public class SynonymMatchQuery implements Releasable {
+
+    /**
+     * Hard limit on the terms, original terms and synonyms, a query text may expand to on a
+     * shard. Analysis stops as soon as it is reached.
+     */
+    public static final Setting<Integer> MAX_EXPANDED_TERMS_SETTING =
+            Setting.intSetting("index.synonym_match.max_expanded_terms", 65536, 1,
+                    Setting.Property.Dynamic, Setting.Property.IndexScope);
+
+    // rough size of the query objects built for one term, the query cache uses the same estimate
+    private static final long QUERY_BYTES_PER_TERM = 1024;
+
+    // the collected terms are charged to the breaker every this many terms, the limit is checked on every term
+    private static final int CHARGE_INTERVAL = 1024;
 
 
     public enum ZeroTermsQuery implements Writeable {
@@ -62,23 +102,102 @@ public class SynonymMatchQuery {
     }
 
 
+    /**
+     * How a synonym match contributes to the score of a position.
+     */
+    public enum SynonymScoring implements Writeable {
+        // synonyms are blended with the original term in a SynonymQuery, weighted by synonym_type_boost
+        BLENDED(0),
+        // a synonym match adds a constant synonym_type_boost, see SynonymPositionQuery
+        CONSTANT(1),
+        // synonyms were expanded at index time and marked by synonym_marker, the query only
+        // has the original terms and synonym occurrences score synonym_type_boost times less
+        INDEX_TIME(2);
+
+        private final int ordinal;
+
+        SynonymScoring(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        public static SynonymScoring readFromStream(StreamInput in) throws IOException {
+            int ord = in.readVInt();
+            for (SynonymScoring synonymScoring : SynonymScoring.values()) {
+                if (synonymScoring.ordinal == ord) {
+                    return synonymScoring;
+                }
+            }
+            throw new ElasticsearchException("unknown serialized type [" + ord + "]");
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(this.ordinal);
+        }
+    }
+
+
     public static final float DEFAULT_SYNONYM_BOOST = 0.00001f;
 
+    public static final SynonymScoring DEFAULT_SYNONYM_SCORING = SynonymScoring.BLENDED;
+
 
     public static final ZeroTermsQuery DEFAULT_ZERO_TERMS_QUERY = ZeroTermsQuery.NONE;
 
+    public static final int DEFAULT_MAX_GRAPH_PATHS = 64;
+
     protected final QueryShardContext context;
 
     protected Analyzer analyzer;
 
     protected float synonym_type_boost;
 
+    protected SynonymScoring synonymScoring = DEFAULT_SYNONYM_SCORING;
+
+    protected boolean mergeRepeatedPositions = true;
+
+    protected Integer maxQueryTerms;
+
+    protected Fuzziness fuzziness;
+
+    protected int fuzzyPrefixLength = FuzzyQuery.defaultPrefixLength;
+
+    protected int maxExpansions = FuzzyQuery.defaultMaxExpansions;
+
     protected BooleanClause.Occur occur = BooleanClause.Occur.SHOULD;
 
     protected SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery = DEFAULT_ZERO_TERMS_QUERY;
 
-    public SynonymMatchQuery(QueryShardContext context) {
+    protected Integer maxSynonymsPerPosition;
+
+    protected Float maxSynonymDocFreqRatio;
+
+    protected int maxGraphPaths = DEFAULT_MAX_GRAPH_PATHS;
+
+    protected final ExpansionReport expansionReport = new ExpansionReport();
+
+    // the terms of the last query built for a single field, see addMatchLabels
+    private AnalyzedText builtTerms;
+
+    // the type of the last field whose query has no terms, it can't be labeled
+    private String unlabeledFieldType;
+
+    private final int maxExpandedTerms;
+
+    // request breaker of the node, null outside of a node
+    private final CircuitBreaker breaker;
+
+    // charged for the analysis buffers and the built query objects, released by close
+    private long chargedBytes;
+
+    private final SynonymMatchServices services;
+
+    public SynonymMatchQuery(QueryShardContext context, SynonymMatchServices services) {
         this.context = context;
+        this.services = services;
+        this.breaker = services.breaker();
+        this.maxExpandedTerms = context == null ? Integer.MAX_VALUE
+                : context.getIndexSettings().getValue(MAX_EXPANDED_TERMS_SETTING);
     }
 
     public void setAnalyzer(String analyzerName) {
@@ -96,6 +215,19 @@ public class SynonymMatchQuery {
         this.synonym_type_boost = synonym_type_boost;
     }
 
+    public void setSynonymScoring(SynonymScoring synonymScoring) {
+        this.synonymScoring = synonymScoring;
+    }
+
+    /**
+     * Whether positions that build the same query, e.g. a repeated word, are combined into
+     * one clause boosted by their count. Scores do not change, but minimum_should_match
+     * counts clauses, so this must be disabled when it is set.
+     */
+    public void setMergeRepeatedPositions(boolean mergeRepeatedPositions) {
+        this.mergeRepeatedPositions = mergeRepeatedPositions;
+    }
+
     public void setAnalyzer(Analyzer analyzer) {
         this.analyzer = analyzer;
     }
@@ -108,127 +240,1050 @@ public class SynonymMatchQuery {
         this.zeroTermsQuery = zeroTermsQuery;
     }
 
+    public void setMaxSynonymsPerPosition(Integer maxSynonymsPerPosition) {
+        this.maxSynonymsPerPosition = maxSynonymsPerPosition;
+    }
+
+    public void setMaxSynonymDocFreqRatio(Float maxSynonymDocFreqRatio) {
+        this.maxSynonymDocFreqRatio = maxSynonymDocFreqRatio;
+    }
+
+    public void setMaxGraphPaths(int maxGraphPaths) {
+        this.maxGraphPaths = maxGraphPaths;
+    }
+
+    /** The original terms match their misspellings within this distance, synonyms are always exact. */
+    public void setFuzziness(Fuzziness fuzziness) {
+        this.fuzziness = fuzziness;
+    }
+
+    public void setFuzzyPrefixLength(int fuzzyPrefixLength) {
+        this.fuzzyPrefixLength = fuzzyPrefixLength;
+    }
+
+    public void setMaxExpansions(int maxExpansions) {
+        this.maxExpansions = maxExpansions;
+    }
+
+    /** Long texts only keep the given number of positions with the highest tf-idf, see {@link #selectTopPositions}. */
+    public void setMaxQueryTerms(Integer maxQueryTerms) {
+        this.maxQueryTerms = maxQueryTerms;
+    }
+
+    /** Returns what happened to the synonym expansion of the last parsed query. */
+    public ExpansionReport getExpansionReport() {
+        return expansionReport;
+    }
+
     public Query parse(String fieldName, Object value) throws IOException {
+        return parse(fieldName, value, null);
+    }
+
+    /**
+     * Same as {@link #parse(String, Object)}, but a tokenized field is built from the terms
+     * that were already resolved, e.g. on the coordinating node, instead of analyzing the
+     * text on this shard. Untokenized fields do not need the terms and are built from the value.
+     */
+    public Query parse(String fieldName, Object value, @Nullable AnalyzedText preAnalyzed) throws IOException {
         final MappedFieldType fieldType = context.fieldMapper(fieldName);
         if (fieldType == null) {
             return newUnmappedFieldQuery(fieldName);
         }
+        if (fieldType.tokenized() == false) {
+            return parseUntokenized(fieldName, fieldType, value);
+        }
+        if (preAnalyzed != null) {
+            // the terms were collected elsewhere, the limit of this index still applies
+            checkExpandedTerms(preAnalyzed.termCount());
+            return buildQuery(fieldName, preAnalyzed);
+        }
         Analyzer analyzer = getAnalyzer(fieldType);
         assert analyzer != null;
 
 
-        return parseInternal(fieldName, fieldType, value.toString());
+        return parseInternal(fieldName, fieldType, analyzer, value.toString());
+    }
+
+    /**
+     * Keyword, numeric, date, ip... fields index the whole value as one term, the field type
+     * builds the term (applying the normalizer of a keyword field) without a token stream.
+     * A synonym_analyzer can only add synonyms of the whole value: the synonyms that span
+     * all the positions of the analyzed value.
+     */
+    private Query parseUntokenized(String fieldName, MappedFieldType fieldType, Object value) throws IOException {
+        final Query original = fieldType.termQuery(value, context);
+        if (original instanceof TermQuery == false) {
+            // e.g. a point query, there is no term to label
+            unlabeledFieldType = fieldType.typeName();
+            return original;
+        }
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        builder.startPosition();
+        builder.addTerm(((TermQuery) original).getTerm().bytes(), TermType.ORIGINAL);
+        boolean synonyms = false;
+        final AnalyzedText expanded = analyzer == null ? AnalyzedText.EMPTY
+                : analyzePositionTerms(analyzer, fieldName, value.toString());
+        if (expanded.isEmpty() == false) {
+            for (int i = expanded.positionStart(0); i < expanded.positionEnd(0); i++) {
+                if (expanded.type(i) != TermType.SYNONYM || expanded.positionLength(i) != expanded.positionCount()) {
+                    continue;
+                }
+                Query synonym = fieldType.termQuery(expanded.term(i).utf8ToString(), context);
+                if (synonym instanceof TermQuery) {
+                    builder.addTerm(((TermQuery) synonym).getTerm().bytes(), TermType.SYNONYM);
+                    synonyms = true;
+                }
+            }
+        }
+        final AnalyzedText terms = builder.build().canonicalize();
+        if (synonyms) {
+            return buildQuery(fieldName, terms);
+        }
+        builtTerms = terms;
+        return original;
+    }
+
+    /**
+     * Returns the per position terms that {@link #parse(String, Object)} builds the query of
+     * the field from, before pruning.
+     */
+    public AnalyzedText expand(String fieldName, String text) {
+        final MappedFieldType fieldType = context.fieldMapper(fieldName);
+        if (fieldType == null && analyzer == null) {
+            throw new IllegalArgumentException("field [" + fieldName + "] is not mapped, a synonym_analyzer is required");
+        }
+        return analyzePositionTerms(analyzer == null ? getAnalyzer(fieldType) : analyzer, fieldName, text);
+    }
+
+    /**
+     * Returns the name of the analyzer {@link #expand} and {@link #parse(String, Object)} analyze
+     * a tokenized field with on this shard, or {@code null} if it has none.
+     */
+    @Nullable
+    public String analyzerName(String fieldName) {
+        final MappedFieldType fieldType = context.fieldMapper(fieldName);
+        if (fieldType == null && analyzer == null) {
+            return null;
+        }
+        final Analyzer fieldAnalyzer = analyzer == null ? getAnalyzer(fieldType) : analyzer;
+        return fieldAnalyzer instanceof NamedAnalyzer ? ((NamedAnalyzer) fieldAnalyzer).name() : null;
+    }
+
+    /**
+     * Builds the query of the {@link SynonymProximityRescorerBuilder synonym_proximity} rescorer
+     * from the same per position terms as {@link #parse(String, Object)}: a sloppy phrase of
+     * the original terms, and a sloppy phrase where every position also accepts its synonyms,
+     * weighted by synonym_type_boost. Terms spanning several positions are left out. Returns
+     * {@code null} if the field is not mapped or not tokenized, or the text has a single position.
+     */
+    public Query parseProximity(String fieldName, Object value, int slop) throws IOException {
+        final MappedFieldType fieldType = context.fieldMapper(fieldName);
+        if (fieldType == null || fieldType.tokenized() == false) {
+            return null;
+        }
+        final AnalyzedText positionTerms =
+                pruneSynonyms(fieldName, analyzePositionTerms(getAnalyzer(fieldType), fieldName, value.toString()));
+        accountQuery(positionTerms, 1);
+        return buildProximityQuery(fieldName, positionTerms, slop);
+    }
+
+    private Query buildProximityQuery(String fieldName, AnalyzedText positionTerms, int slop) {
+        if (positionTerms.positionCount() < 2) {
+            return null;
+        }
+        MultiPhraseQuery.Builder originalPhrase = new MultiPhraseQuery.Builder().setSlop(slop);
+        MultiPhraseQuery.Builder synonymPhrase = new MultiPhraseQuery.Builder().setSlop(slop);
+        boolean originalsAtEveryPosition = true;
+        boolean hasSynonyms = false;
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            List<Term> originals = new ArrayList<>();
+            List<Term> terms = new ArrayList<>();
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (positionTerms.positionLength(i) == 1) {
+                    Term term = new Term(fieldName, positionTerms.term(i));
+                    terms.add(term);
+                    if (positionTerms.type(i) != TermType.SYNONYM) {
+                        originals.add(term);
+                    }
+                }
+            }
+            if (terms.isEmpty()) {
+                // all synonyms of the position were pruned
+                continue;
+            }
+            if (originals.isEmpty()) {
+                originalsAtEveryPosition = false;
+            } else {
+                originalPhrase.add(originals.toArray(new Term[0]), position);
+            }
+            synonymPhrase.add(terms.toArray(new Term[0]), position);
+            hasSynonyms |= terms.size() > originals.size();
+        }
+        final Query original = originalsAtEveryPosition ? originalPhrase.build() : null;
+        if (hasSynonyms == false) {
+            return original;
+        }
+        final Query synonyms = new BoostQuery(synonymPhrase.build(), synonym_type_boost);
+        return original == null ? synonyms : disjunction(Arrays.asList(original, synonyms));
     }
 
-    protected final Query parseInternal(String fieldName, MappedFieldType fieldType, String queryText) throws IOException {
+    /**
+     * Builds a query over several fields. Fields that share the same search analyzer are
+     * analyzed once and the per position term lists are reused for each of them.
+     */
+    public Query parse(Map<String, Float> fieldBoosts, Object value, SynonymMultiMatchBuilder.Type type,
+                       float tieBreaker, String minimumShouldMatch) throws IOException {
+        final Map<String, Float> fields = QueryParserHelper.resolveMappingFields(context, fieldBoosts);
+        if (fields.isEmpty()) {
+            return Queries.newUnmappedFieldsQuery(fieldBoosts.keySet());
+        }
+        // analyzers do not override equals, so this groups the fields by analyzer instance
+        final Map<Analyzer, List<String>> groups = new LinkedHashMap<>();
+        final List<Query> queries = new ArrayList<>();
+        for (String field : fields.keySet()) {
+            MappedFieldType fieldType = context.fieldMapper(field);
+            if (fieldType == null) {
+                continue;
+            }
+            if (fieldType.tokenized() == false) {
+                // the value is a single term, there is nothing to share with other fields
+                queries.add(boost(parseUntokenized(field, fieldType, value), fields.get(field)));
+                continue;
+            }
+            groups.computeIfAbsent(getAnalyzer(fieldType), k -> new ArrayList<>()).add(field);
+        }
+        if (groups.isEmpty() && queries.isEmpty()) {
+            return Queries.newUnmappedFieldsQuery(fieldBoosts.keySet());
+        }
+
+        final String queryText = value.toString();
+        for (Map.Entry<Analyzer, List<String>> group : groups.entrySet()) {
+            final List<String> groupFields = group.getValue();
+            final AnalyzedText positionTerms =
+                    indexTimeTerms(analyzePositionTerms(group.getKey(), groupFields.get(0), queryText));
+            expansionReport.expanded(positionTerms);
+            services.stats().onExpansion(positionTerms);
+            accountQuery(positionTerms, groupFields.size());
+            if (positionTerms.isEmpty()) {
+                continue;
+            }
+            if (type == SynonymMultiMatchBuilder.Type.CROSS_FIELDS) {
+                Query query = newCrossFieldsQuery(groupFields, fields, positionTerms, tieBreaker);
+                if (query != null) {
+                    queries.add(Queries.maybeApplyMinimumShouldMatch(query, minimumShouldMatch));
+                }
+            } else {
+                for (String field : groupFields) {
+                    AnalyzedText terms = pruneSynonyms(field, positionTerms);
+                    if (terms.isEmpty()) {
+                        continue;
+                    }
+                    Query query = analyzeList(field, terms);
+                    if (query != null) {
+                        query = Queries.maybeApplyMinimumShouldMatch(query, minimumShouldMatch);
+                        queries.add(boost(query, fields.get(field)));
+                    }
+                }
+            }
+        }
+
+        if (queries.isEmpty()) {
+            return zeroTermsQuery();
+        }
         final Query query;
-        // Use the analyzer to get all the tokens, and then build an appropriate
-        // query based on the analysis chain.
-        try (TokenStream source = analyzer.tokenStream(fieldName, queryText)) {
-            query = createFieldQuery(source, fieldType, fieldName);
-        } catch (IOException e) {
-            throw new RuntimeException("Error analyzing query text", e);
+        if (queries.size() == 1) {
+            query = queries.get(0);
+        } else if (type == SynonymMultiMatchBuilder.Type.MOST_FIELDS) {
+            BooleanQuery.Builder q = new BooleanQuery.Builder();
+            for (Query fieldQuery : queries) {
+                q.add(fieldQuery, BooleanClause.Occur.SHOULD);
+            }
+            query = q.build();
+        } else {
+            query = new DisjunctionMaxQuery(queries, tieBreaker);
         }
-        return query == null ? zeroTermsQuery() : query;
+        services.stats().onBuilt(query);
+        return query;
     }
 
-    private Query createFieldQuery(TokenStream source, MappedFieldType fieldType, String field) {
+    /**
+     * Registers two named queries for each position of the last query built by
+     * {@link #parse(String, Object)}: {@code prefix:position:term:original} matches the
+     * original terms of the position and {@code prefix:position:term:synonym} its synonyms.
+     * The names of the queries a hit matches are returned in its {@code matched_queries},
+     * they are only run against the returned hits.
+     *
+     * Multi-token synonyms are labeled by their first term. With index time synonyms only
+     * the synonym label is available, it means that some occurrence comes from a synonym.
+     * Fields that are not indexed as terms, e.g. numeric fields, can't be labeled.
+     */
+    public void addMatchLabels(String field, String prefix) {
+        if (unlabeledFieldType != null) {
+            throw new IllegalArgumentException("match_labels is not supported on field [" + field
+                    + "] of type [" + unlabeledFieldType + "]");
+        }
+        if (builtTerms == null) {
+            // the field is not mapped
+            return;
+        }
+        for (int position = 0; position < builtTerms.positionCount(); position++) {
+            final int start = builtTerms.positionStart(position);
+            final int end = builtTerms.positionEnd(position);
+            if (start == end) {
+                continue;
+            }
+            final List<BytesRef> originals = new ArrayList<>();
+            final List<BytesRef> synonyms = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                (builtTerms.type(i) == TermType.SYNONYM ? synonyms : originals).add(builtTerms.term(i));
+            }
+            final String label = prefix + ":" + position + ":" + builtTerms.term(start).utf8ToString();
+            if (synonymScoring == SynonymScoring.INDEX_TIME) {
+                List<SpanQuery> marked = new ArrayList<>(originals.size());
+                for (BytesRef term : originals) {
+                    marked.add(new SpanPayloadCheckQuery(new SpanTermQuery(new Term(field, term)),
+                            Collections.singletonList(SynonymMarkerFilter.SYNONYM_PAYLOAD)));
+                }
+                context.addNamedQuery(label + ":synonym",
+                        marked.size() == 1 ? marked.get(0) : new SpanOrQuery(marked.toArray(new SpanQuery[0])));
+                continue;
+            }
+            if (originals.isEmpty() == false) {
+                context.addNamedQuery(label + ":original", new TermInSetQuery(field, originals));
+            }
+            if (synonyms.isEmpty() == false) {
+                context.addNamedQuery(label + ":synonym", new TermInSetQuery(field, synonyms));
+            }
+        }
+    }
 
-        // 收集每一个 position 上的 term (如果有同义词 ，会有多个 term)
-        List<List<TermType>> positionTerms = new ArrayList<>();
-        List<TermType> tmpTerms = null;
-        // Build an appropriate query based on the analysis chain.
-        try (CachingTokenFilter stream = new CachingTokenFilter(source)) {
+    /**
+     * Treats the fields as one big field: each position is the best match over all fields,
+     * the positions are combined with the operator.
+     */
+    private Query newCrossFieldsQuery(List<String> fields, Map<String, Float> fieldBoosts,
+                                      AnalyzedText positionTerms, float tieBreaker) {
+        if (positionTerms.hasGraph()) {
+            return newGraphQuery(fields, fieldBoosts, positionTerms, tieBreaker);
+        }
+        List<Query> positionQueries = new ArrayList<>(positionTerms.positionCount());
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            List<Query> fieldQueries = new ArrayList<>(fields.size());
+            for (String field : fields) {
+                fieldQueries.add(boost(newPositionQuery(field, positionTerms, position), fieldBoosts.get(field)));
+            }
+            positionQueries.add(fieldQueries.size() == 1 ? fieldQueries.get(0) : new DisjunctionMaxQuery(fieldQueries, tieBreaker));
+        }
+        return newPositionsQuery(positionQueries);
+    }
 
-            TermToBytesRefAttribute termAtt = stream.getAttribute(TermToBytesRefAttribute.class);
-            PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
-            PositionLengthAttribute posLenAtt = stream.addAttribute(PositionLengthAttribute.class);
+    private static Query boost(Query query, Float boost) {
+        return boost == null || boost == AbstractQueryBuilder.DEFAULT_BOOST ? query : new BoostQuery(query, boost);
+    }
 
-            if (termAtt == null) {
-                return null;
+    protected final Query parseInternal(String fieldName, MappedFieldType fieldType, Analyzer analyzer,
+                                        String queryText) throws IOException {
+        return buildQuery(fieldName, analyzePositionTerms(analyzer, fieldName, queryText));
+    }
+
+    private Query buildQuery(String fieldName, AnalyzedText positionTerms) throws IOException {
+        final AnalyzedText terms = pruneSynonyms(fieldName, selectTopPositions(fieldName, indexTimeTerms(positionTerms)));
+        builtTerms = terms;
+        expansionReport.expanded(terms);
+        services.stats().onExpansion(terms);
+        accountQuery(terms, 1);
+        final Query query = terms.isEmpty() ? null : analyzeList(fieldName, terms);
+        if (query == null) {
+            return zeroTermsQuery();
+        }
+        services.stats().onBuilt(query);
+        return query;
+    }
+
+    /**
+     * With index time synonyms the index already has the synonyms at the positions of the
+     * original terms, only the original terms are looked up.
+     */
+    private AnalyzedText indexTimeTerms(AnalyzedText positionTerms) {
+        if (synonymScoring != SynonymScoring.INDEX_TIME) {
+            return positionTerms;
+        }
+        boolean synonyms = positionTerms.hasGraph();
+        for (int i = 0; i < positionTerms.termCount() && synonyms == false; i++) {
+            synonyms = positionTerms.type(i) == TermType.SYNONYM;
+        }
+        if (synonyms == false) {
+            return positionTerms;
+        }
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            boolean started = false;
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (positionTerms.type(i) == TermType.SYNONYM) {
+                    continue;
+                }
+                if (started == false) {
+                    builder.startPosition();
+                    started = true;
+                }
+                builder.addTerm(positionTerms.term(i), TermType.ORIGINAL);
             }
+        }
+        return builder.build();
+    }
 
-            // phase 1: read through the stream and assess the situation:
-            // counting the number of tokens/positions and marking if we have any synonyms.
+    /**
+     * Document as query: when the text has more than {@code maxQueryTerms} positions, keeps
+     * the distinct positions with the highest tf-idf, like more_like_this does with terms.
+     * The document frequency of a position is the one of all its terms, originals and
+     * synonyms, on this shard; positions that match no document are dropped. The kept
+     * positions are used once each, in text order. Terms spanning several positions are
+     * dropped, the selected positions are matched one by one.
+     */
+    AnalyzedText selectTopPositions(String field, AnalyzedText positionTerms) throws IOException {
+        if (maxQueryTerms == null || positionTerms.positionCount() <= maxQueryTerms) {
+            return positionTerms;
+        }
+        // distinct positions -> {first position, frequency in the text}
+        final Map<BytesRef, int[]> distinct = new LinkedHashMap<>();
+        final BytesRefBuilder key = new BytesRefBuilder();
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            key.clear();
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (positionTerms.positionLength(i) == 1) {
+                    key.append(positionTerms.term(i));
+                    key.append((byte) (0xF8 | positionTerms.type(i)));
+                }
+            }
+            if (key.length() > 0) {
+                final int first = position;
+                distinct.computeIfAbsent(key.toBytesRef(), k -> new int[] { first, 0 })[1]++;
+            }
+        }
 
+        final IndexReader reader = context == null ? null : context.getIndexReader();
+        final int limit = maxQueryTerms;
+        final PriorityQueue<float[]> queue = new PriorityQueue<float[]>(Math.min(limit, distinct.size())) {
+            @Override
+            protected boolean lessThan(float[] a, float[] b) {
+                // {score, position}, earlier positions win ties
+                return a[0] < b[0] || (a[0] == b[0] && a[1] > b[1]);
+            }
+        };
+        for (int[] entry : distinct.values()) {
+            final int position = entry[0];
+            float idf = 1f;
+            if (reader != null) {
+                long docFreq = 0;
+                for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                    if (positionTerms.positionLength(i) == 1) {
+                        docFreq += reader.docFreq(new Term(field, positionTerms.term(i)));
+                    }
+                }
+                if (docFreq == 0) {
+                    continue;
+                }
+                // synonyms may be counted twice for the same document
+                docFreq = Math.min(docFreq, reader.maxDoc());
+                idf = (float) Math.log(1 + (reader.maxDoc() - docFreq + 0.5D) / (docFreq + 0.5D));
+            }
+            queue.insertWithOverflow(new float[] { entry[1] * idf, position });
+        }
 
-            stream.reset();
-            // 执行 stream.incrementToken() 会产生一个 term
-            // TODO 检查 stop 词的情况
-            while (stream.incrementToken()) {
-                int positionIncrement = posIncAtt.getPositionIncrement();
-                // 分词出下一个 term
-                if (positionIncrement != 0 && tmpTerms != null) {
-                    positionTerms.add(tmpTerms);
-                    tmpTerms = null;
+        final int[] selected = new int[queue.size()];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = (int) queue.pop()[1];
+        }
+        Arrays.sort(selected);
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        for (int position : selected) {
+            builder.startPosition();
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (positionTerms.positionLength(i) == 1) {
+                    builder.addTerm(positionTerms.term(i), positionTerms.type(i));
                 }
-                if (tmpTerms == null) {
-                    tmpTerms = new ArrayList<>();
+            }
+        }
+        expansionReport.droppedPositions(positionTerms.positionCount() - selected.length);
+        return builder.build();
+    }
+
+    /**
+     * Drops the synonyms of a position whose document frequency on this shard is above
+     * {@code maxSynonymDocFreqRatio}, then keeps the {@code maxSynonymsPerPosition} rarest
+     * ones. Original terms are always kept.
+     */
+    AnalyzedText pruneSynonyms(String field, AnalyzedText positionTerms) throws IOException {
+        if (maxSynonymsPerPosition == null && maxSynonymDocFreqRatio == null) {
+            return positionTerms;
+        }
+        final IndexReader reader = context == null ? null : context.getIndexReader();
+        final long maxDocFreq = reader == null || maxSynonymDocFreqRatio == null ?
+                Long.MAX_VALUE : (long) Math.floor(maxSynonymDocFreqRatio * reader.maxDoc());
+        final int maxSynonyms = maxSynonymsPerPosition == null ? Integer.MAX_VALUE : maxSynonymsPerPosition;
+
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        boolean pruned = false;
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            final int start = positionTerms.positionStart(position);
+            final int end = positionTerms.positionEnd(position);
+            final boolean[] keep = new boolean[end - start];
+            final List<Integer> synonyms = new ArrayList<>();
+            final long[] docFreqs = new long[end - start];
+            for (int i = start; i < end; i++) {
+                if (positionTerms.type(i) != TermType.SYNONYM) {
+                    keep[i - start] = true;
+                    continue;
+                }
+                docFreqs[i - start] = reader == null ? 0 : reader.docFreq(new Term(field, positionTerms.term(i)));
+                if (docFreqs[i - start] <= maxDocFreq) {
+                    synonyms.add(i);
                 }
-                PackedTokenAttributeImpl t = ((PackedTokenAttributeImpl) termAtt);
-                String type = t.type();
-                tmpTerms.add(new TermType(field, type, t.getBytesRef()));
             }
-            if (tmpTerms != null) {
-                positionTerms.add(tmpTerms);
+            // the rarest synonyms are the most selective ones
+            synonyms.sort((a, b) -> Long.compare(docFreqs[a - start], docFreqs[b - start]));
+            for (int i = 0; i < synonyms.size() && i < maxSynonyms; i++) {
+                keep[synonyms.get(i) - start] = true;
             }
 
-            // phase 2: based on token count, presence of synonyms, and options
-            // formulate a single term, boolean, or phrase.
-            if (positionTerms.size() == 0) {
-                return null;
-            } else {
-                return analyzeList(positionTerms);
+            // a graph keeps its empty positions, the position lengths of the other terms count them
+            boolean started = false;
+            if (positionTerms.hasGraph()) {
+                builder.startPosition();
+                started = true;
             }
+            for (int i = start; i < end; i++) {
+                if (keep[i - start] == false) {
+                    pruned = true;
+                    expansionReport.pruned(positionTerms.term(i).utf8ToString());
+                    continue;
+                }
+                if (started == false) {
+                    builder.startPosition();
+                    started = true;
+                }
+                builder.addTerm(positionTerms.term(i), positionTerms.type(i), positionTerms.positionLength(i));
+            }
+        }
+        return pruned ? builder.build() : positionTerms;
+    }
+
+    /**
+     * Returns the per position term lists of the query text, served from the node level
+     * {@link SynonymAnalysisCache} when possible.
+     */
+    private AnalyzedText analyzePositionTerms(Analyzer analyzer, String fieldName, String queryText) {
+        final long start = System.nanoTime();
+        try {
+            return lookupPositionTerms(analyzer, fieldName, queryText);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            expansionReport.analyzed(nanos);
+            services.stats().onAnalysis(nanos);
+        }
+    }
+
+    private AnalyzedText lookupPositionTerms(Analyzer analyzer, String fieldName, String queryText) {
+        SynonymAnalysisCache cache = services.analysisCache();
+        if (cache == null || cache.accepts(queryText) == false) {
+            return analyze(analyzer, fieldName, queryText);
+        }
+        try {
+            return cache.getOrCompute(context.index(), analyzer, fieldName, queryText,
+                    () -> analyze(analyzer, fieldName, queryText));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error analyzing query text", e.getCause());
+        }
+    }
+
+    AnalyzedText analyze(Analyzer analyzer, String fieldName, String queryText) {
+        // Use the analyzer to get all the tokens, the query is built from them
+        // by analyzeList.
+        try (TokenStream source = analyzer.tokenStream(fieldName, queryText)) {
+            // canonical terms build equal queries for equivalent texts, cached texts are canonical
+            return collectPositionTerms(source).canonicalize();
         } catch (IOException e) {
             throw new RuntimeException("Error analyzing query text", e);
         }
     }
 
-    private Query analyzeList(List<List<TermType>> positionTerms) {
-        if (positionTerms.size() == 1) {
-            List<TermType> termTypes = positionTerms.get(0);
-            if (termTypes.size() == 1){
-                // single term
-                TermType termType = termTypes.get(0);
-                return newTermQuery(termType);
-            } else {
-                // single term with synonym
-                return newSynonymQuery(termTypes);
+    AnalyzedText collectPositionTerms(TokenStream stream) throws IOException {
+        // 收集每一个 position 上的 term (如果有同义词 ，会有多个 term)
+        // the stream is consumed once, so there is no need to buffer it in a CachingTokenFilter
+        TermToBytesRefAttribute termAtt = stream.getAttribute(TermToBytesRefAttribute.class);
+        PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+        PositionLengthAttribute posLenAtt = stream.addAttribute(PositionLengthAttribute.class);
+
+        if (termAtt == null) {
+            return AnalyzedText.EMPTY;
+        }
+
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        // positions are collapsed, the position in the stream of each position and the node in
+        // the stream each term ends at translate the position lengths if a stop filter left holes
+        int streamPosition = -1;
+        int[] streamStarts = new int[8];
+        int[] streamEnds = new int[8];
+        boolean holes = false;
+        long charged = 0;
+        stream.reset();
+        // 执行 stream.incrementToken() 会产生一个 term
+        while (stream.incrementToken()) {
+            // 分词出下一个 term
+            final int increment = posIncAtt.getPositionIncrement();
+            if (increment != 0 || builder.positionCount() == 0) {
+                holes |= increment > 1;
+                streamPosition += Math.max(increment, 1);
+                streamStarts = ArrayUtil.grow(streamStarts, builder.positionCount() + 1);
+                streamStarts[builder.positionCount()] = streamPosition;
+                builder.startPosition();
+            }
+            streamEnds = ArrayUtil.grow(streamEnds, builder.termCount() + 1);
+            streamEnds[builder.termCount()] = streamPosition + posLenAtt.getPositionLength();
+            builder.addTerm(termAtt.getBytesRef(), TermType.of(typeAtt.type()), posLenAtt.getPositionLength());
+            checkExpandedTerms(builder.termCount());
+            if (builder.termCount() % CHARGE_INTERVAL == 0) {
+                chargedBytes += charge(builder.ramBytesUsed() - charged, "<synonym_match_analysis>");
+                charged = builder.ramBytesUsed();
             }
+        }
+        stream.end();
+        chargedBytes += charge(builder.ramBytesUsed() - charged, "<synonym_match_analysis>");
+        final AnalyzedText terms = builder.build();
+        return holes ? closeHoles(terms, streamStarts, streamEnds) : terms;
+    }
+
+    /**
+     * Counts the position lengths in collapsed positions. A stop filter after a graph filter
+     * removes positions that the terms spanning over them still count, such a term would
+     * otherwise reach past the next position of the text. A term ends at the first position
+     * that starts at or after the node it ends at in the stream.
+     */
+    private static AnalyzedText closeHoles(AnalyzedText terms, int[] streamStarts, int[] streamEnds) {
+        final int positions = terms.positionCount();
+        AnalyzedText.Builder builder = new AnalyzedText.Builder();
+        for (int position = 0; position < positions; position++) {
+            builder.startPosition();
+            for (int i = terms.positionStart(position); i < terms.positionEnd(position); i++) {
+                int end = Arrays.binarySearch(streamStarts, position + 1, positions, streamEnds[i]);
+                if (end < 0) {
+                    end = -end - 1;
+                }
+                builder.addTerm(terms.term(i), terms.type(i), end - position);
+            }
+        }
+        return builder.build();
+    }
+
+    private void checkExpandedTerms(int terms) {
+        if (terms > maxExpandedTerms) {
+            throw new IllegalArgumentException("The number of terms [" + terms + "] expanded from the query text "
+                    + "has exceeded the allowed maximum of [" + maxExpandedTerms + "]. This maximum can be set by "
+                    + "changing the [" + MAX_EXPANDED_TERMS_SETTING.getKey() + "] index level setting.");
+        }
+    }
+
+    /**
+     * Checks the terms a query is built from against the limit and charges the query
+     * objects they turn into to the request breaker. The charge only lasts while the query
+     * is built, the size of the query the search holds on to is bounded by the limit.
+     */
+    private void accountQuery(AnalyzedText positionTerms, int fields) {
+        checkExpandedTerms(positionTerms.termCount());
+        chargedBytes += charge(positionTerms.ramBytesUsed() + (long) positionTerms.termCount() * fields * QUERY_BYTES_PER_TERM,
+                "<synonym_match_query>");
+    }
+
+    private long charge(long bytes, String label) {
+        if (breaker == null || bytes <= 0) {
+            return 0;
+        }
+        breaker.addEstimateBytesAndMaybeBreak(bytes, label);
+        return bytes;
+    }
+
+    /**
+     * Gives back to the request breaker what the analysis buffers and the built queries
+     * charged, whether or not the query is then used by a search.
+     */
+    @Override
+    public void close() {
+        if (chargedBytes > 0) {
+            breaker.addWithoutBreaking(-chargedBytes);
+            chargedBytes = 0;
+        }
+    }
+
+    Query analyzeList(String field, AnalyzedText positionTerms) {
+        if (positionTerms.hasGraph()) {
+            // multi-token synonyms, e.g. "ny, new york"
+            return newGraphQuery(Collections.singletonList(field), Collections.emptyMap(), positionTerms, 0f);
+        }
+        if (positionTerms.positionCount() == 1) {
+            // single term, with or without synonyms
+            return newPositionQuery(field, positionTerms, 0);
         } else {
-                return newBooleanQuery(positionTerms);
+                return newBooleanQuery(field, positionTerms);
         }
     }
 
-    private Query newTermQuery(TermType termType){
-        return new TermQuery(new Term(termType.getField(), termType.getBytes()));
+    private Query newTermQuery(String field, BytesRef term){
+        if (synonymScoring == SynonymScoring.INDEX_TIME) {
+            return newMarkedTermsQuery(new SpanTermQuery(new Term(field, term)));
+        }
+        return new TermQuery(new Term(field, term));
     }
 
-    private Query newSynonymQuery(List<TermType> termTypes){
-        SynonymQuery.Builder builder = new SynonymQuery.Builder(termTypes.get(0).getField());
-        for(TermType t : termTypes){
-            if ("SYNONYM".equals(t.getType())) {
-                builder.addTerm(new Term(t.getField(), t.getBytes()), synonym_type_boost);
+    /**
+     * Scores the occurrences of the terms by their synonym_marker payload, a document that
+     * has an original occurrence gets the full score.
+     */
+    private Query newMarkedTermsQuery(SpanQuery terms) {
+        return new PayloadScoreQuery(terms, new MaxPayloadFunction(), new SynonymPayloadDecoder(synonym_type_boost), true);
+    }
+
+    Query newSynonymQuery(String field, AnalyzedText positionTerms, int position){
+        if (synonymScoring == SynonymScoring.INDEX_TIME) {
+            // e.g. stemmed variants, the position has no synonym terms
+            SpanQuery[] terms = new SpanQuery[positionTerms.positionSize(position)];
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                terms[i - positionTerms.positionStart(position)] = new SpanTermQuery(new Term(field, positionTerms.term(i)));
+            }
+            return newMarkedTermsQuery(new SpanOrQuery(terms));
+        }
+        if (synonymScoring == SynonymScoring.CONSTANT) {
+            return newSynonymPositionQuery(field, positionTerms, position);
+        }
+        SynonymQuery.Builder builder = new SynonymQuery.Builder(field);
+        for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+            if (positionTerms.type(i) == TermType.SYNONYM) {
+                builder.addTerm(new Term(field, positionTerms.term(i)), synonym_type_boost);
             } else {
-                builder.addTerm(new Term(t.getField(), t.getBytes()));
+                builder.addTerm(new Term(field, positionTerms.term(i)));
             }
         }
         return builder.build();
     }
 
-    private Query newBooleanQuery(List<List<TermType>> positionTerms) {
+    private Query newSynonymPositionQuery(String field, AnalyzedText positionTerms, int position) {
+        List<BytesRef> originals = new ArrayList<>();
+        List<BytesRef> synonyms = new ArrayList<>();
+        for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+            (positionTerms.type(i) == TermType.SYNONYM ? synonyms : originals).add(positionTerms.term(i));
+        }
+        final Query original;
+        if (originals.isEmpty()) {
+            original = null;
+        } else if (originals.size() == 1) {
+            original = newTermQuery(field, originals.get(0));
+        } else {
+            SynonymQuery.Builder builder = new SynonymQuery.Builder(field);
+            for (BytesRef term : originals) {
+                builder.addTerm(new Term(field, term));
+            }
+            original = builder.build();
+        }
+        if (synonyms.isEmpty()) {
+            return original;
+        }
+        return new SynonymPositionQuery(original, new TermInSetQuery(field, synonyms), synonym_type_boost);
+    }
+
+    Query newBooleanQuery(String field, AnalyzedText positionTerms) {
+        if (positionTerms.hasGraph()) {
+            return newGraphQuery(Collections.singletonList(field), Collections.emptyMap(), positionTerms, 0f);
+        }
+        // the original term and its synonyms stay one clause, the operator applies between positions
+        List<Query> positionQueries = new ArrayList<>(positionTerms.positionCount());
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            positionQueries.add(newPositionQuery(field, positionTerms, position));
+        }
+        return newPositionsQuery(positionQueries);
+    }
+
+    /**
+     * Combines the queries of the positions with the operator. Equal position queries are
+     * merged into one clause whose boost is their count, the sum of their scores.
+     */
+    private Query newPositionsQuery(List<Query> positionQueries) {
         BooleanQuery.Builder q = new BooleanQuery.Builder();
-        for (List<TermType> tt : positionTerms){
-            if (tt.size() == 1) {
-                q.add(newTermQuery(tt.get(0)), BooleanClause.Occur.SHOULD);
+        if (mergeRepeatedPositions == false) {
+            for (Query query : positionQueries) {
+                if (query != null) {
+                    q.add(query, occur);
+                }
+            }
+            return q.build();
+        }
+        Map<Query, Integer> counts = new LinkedHashMap<>();
+        for (Query query : positionQueries) {
+            if (query != null) {
+                counts.merge(query, 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<Query, Integer> entry : counts.entrySet()) {
+            q.add(entry.getValue() == 1 ? entry.getKey() : new BoostQuery(entry.getKey(), entry.getValue()), occur);
+        }
+        return q.build();
+    }
+
+    private Query newPositionQuery(String field, AnalyzedText positionTerms, int position) {
+        if (positionTerms.positionSize(position) == 0) {
+            // all synonyms of the position were pruned
+            return null;
+        } else if (fuzziness != null) {
+            return newFuzzyPositionQuery(field, positionTerms, position);
+        } else if (positionTerms.positionSize(position) == 1) {
+            return newTermQuery(field, positionTerms.term(positionTerms.positionStart(position)));
+        } else {
+            return newSynonymQuery(field, positionTerms, position);
+        }
+    }
+
+    /**
+     * With fuzziness the original terms of the position also match their misspellings while
+     * the synonyms only match exactly: the fuzzy queries of the original terms and the query
+     * of the synonyms are alternatives of one clause.
+     */
+    private Query newFuzzyPositionQuery(String field, AnalyzedText positionTerms, int position) {
+        List<Query> clauses = new ArrayList<>();
+        List<BytesRef> synonyms = new ArrayList<>();
+        for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+            if (positionTerms.type(i) == TermType.SYNONYM) {
+                synonyms.add(positionTerms.term(i));
+            } else {
+                clauses.add(newFuzzyQuery(field, positionTerms.term(i)));
+            }
+        }
+        if (synonyms.isEmpty() == false) {
+            clauses.add(synonymScoring == SynonymScoring.CONSTANT
+                    ? new BoostQuery(new ConstantScoreQuery(new TermInSetQuery(field, synonyms)), synonym_type_boost)
+                    : newTermsQuery(field, Collections.emptyList(), synonyms));
+        }
+        return disjunction(clauses);
+    }
+
+    private Query newFuzzyQuery(String field, BytesRef term) {
+        final int edits = Math.min(fuzziness.asDistance(term.utf8ToString()), LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE);
+        if (edits == 0) {
+            return newTermQuery(field, term);
+        }
+        return new SynonymFuzzyQuery(new Term(field, term), edits, fuzzyPrefixLength, maxExpansions, true,
+                services.fuzzyCache());
+    }
+
+    /**
+     * Builds the query of a text with multi-token synonyms. The text is split into segments
+     * at the positions that no term spans over. A segment with side paths becomes a single
+     * clause that matches any of its paths: single term paths are combined like the terms
+     * of a position, longer paths are matched as phrases. A segment with more than
+     * {@code maxGraphPaths} paths is matched position by position like a flat text.
+     *
+     * With several fields each clause is the best match over the fields.
+     */
+    private Query newGraphQuery(List<String> fields, Map<String, Float> fieldBoosts,
+                                AnalyzedText positionTerms, float tieBreaker) {
+        final int[] segments = graphSegments(positionTerms);
+        final List<Query> clauses = new ArrayList<>();
+        for (int s = 0; s + 1 < segments.length; s++) {
+            final int start = segments[s];
+            final int end = segments[s + 1];
+            final List<int[]> paths = end - start == 1 ? null : graphPaths(positionTerms, start, end);
+            if (paths != null) {
+                addClause(clauses, fields, fieldBoosts, tieBreaker,
+                        field -> newGraphPathsQuery(field, positionTerms, paths));
+                continue;
+            }
+            if (end - start > 1) {
+                expansionReport.flattened(segmentToString(positionTerms, start, end));
+            }
+            for (int position = start; position < end; position++) {
+                final int p = position;
+                addClause(clauses, fields, fieldBoosts, tieBreaker, field -> newPositionQuery(field, positionTerms, p));
+            }
+        }
+        if (clauses.isEmpty()) {
+            return null;
+        } else if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        BooleanQuery.Builder q = new BooleanQuery.Builder();
+        for (Query clause : clauses) {
+            q.add(clause, occur);
+        }
+        return q.build();
+    }
+
+    private static void addClause(List<Query> clauses, List<String> fields, Map<String, Float> fieldBoosts,
+                                  float tieBreaker, Function<String, Query> fieldQuery) {
+        List<Query> fieldQueries = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            Query query = fieldQuery.apply(field);
+            if (query != null) {
+                fieldQueries.add(boost(query, fieldBoosts.get(field)));
+            }
+        }
+        if (fieldQueries.size() == 1) {
+            clauses.add(fieldQueries.get(0));
+        } else if (fieldQueries.size() > 1) {
+            clauses.add(new DisjunctionMaxQuery(fieldQueries, tieBreaker));
+        }
+    }
+
+    /**
+     * Returns the boundaries of the segments of the graph, segment {@code i} covers the
+     * positions {@code [bounds[i], bounds[i + 1])}. A new segment starts at each position
+     * that no term of a previous position spans over.
+     */
+    static int[] graphSegments(AnalyzedText positionTerms) {
+        final int positions = positionTerms.positionCount();
+        final int[] bounds = new int[positions + 1];
+        int count = 0;
+        // the furthest position reached by the terms seen so far
+        int reach = 0;
+        for (int position = 0; position < positions; position++) {
+            if (position >= reach) {
+                bounds[count++] = position;
+            }
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                reach = Math.max(reach, position + positionTerms.positionLength(i));
+            }
+        }
+        bounds[count++] = positions;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Returns the paths from {@code start} to {@code end} as term ordinals, or {@code null}
+     * if there are more than {@code maxGraphPaths} of them.
+     */
+    List<int[]> graphPaths(AnalyzedText positionTerms, int start, int end) {
+        List<int[]> paths = new ArrayList<>();
+        return collectPaths(positionTerms, start, end, new int[end - start], 0, paths) ? paths : null;
+    }
+
+    private boolean collectPaths(AnalyzedText positionTerms, int position, int end, int[] path, int length,
+                                 List<int[]> paths) {
+        if (position == end) {
+            paths.add(Arrays.copyOf(path, length));
+            return paths.size() <= maxGraphPaths;
+        }
+        for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+            final int next = position + positionTerms.positionLength(i);
+            if (next > end) {
+                // only possible at the end of a truncated graph
+                continue;
+            }
+            path[length] = i;
+            if (collectPaths(positionTerms, next, end, path, length + 1, paths) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the query of a segment that matches any of the paths. A path is a synonym path
+     * if any of its terms is a synonym.
+     */
+    private Query newGraphPathsQuery(String field, AnalyzedText positionTerms, List<int[]> paths) {
+        List<BytesRef> originalTerms = new ArrayList<>();
+        List<BytesRef> synonymTerms = new ArrayList<>();
+        List<Query> originalPaths = new ArrayList<>();
+        List<Query> synonymPaths = new ArrayList<>();
+        for (int[] path : paths) {
+            boolean synonym = false;
+            for (int ord : path) {
+                synonym |= positionTerms.type(ord) == TermType.SYNONYM;
+            }
+            if (path.length == 1) {
+                (synonym ? synonymTerms : originalTerms).add(positionTerms.term(path[0]));
             } else {
-                q.add(newSynonymQuery(tt), BooleanClause.Occur.SHOULD);
+                (synonym ? synonymPaths : originalPaths).add(newPathQuery(field, positionTerms, path));
+            }
+        }
+
+        if (synonymScoring == SynonymScoring.CONSTANT) {
+            if (originalTerms.isEmpty() == false) {
+                originalPaths.add(0, newTermsQuery(field, originalTerms, Collections.emptyList()));
+            }
+            if (synonymTerms.isEmpty() == false) {
+                synonymPaths.add(0, new TermInSetQuery(field, synonymTerms));
             }
+            Query original = disjunction(originalPaths);
+            Query synonyms = disjunction(synonymPaths);
+            return synonyms == null ? original : new SynonymPositionQuery(original, synonyms, synonym_type_boost);
+        }
+
+        List<Query> clauses = new ArrayList<>();
+        if (originalTerms.isEmpty() == false || synonymTerms.isEmpty() == false) {
+            clauses.add(newTermsQuery(field, originalTerms, synonymTerms));
+        }
+        clauses.addAll(originalPaths);
+        for (Query query : synonymPaths) {
+            clauses.add(new BoostQuery(query, synonym_type_boost));
+        }
+        return disjunction(clauses);
+    }
+
+    private Query newTermsQuery(String field, List<BytesRef> originals, List<BytesRef> synonyms) {
+        if (originals.size() == 1 && synonyms.isEmpty()) {
+            return newTermQuery(field, originals.get(0));
+        }
+        SynonymQuery.Builder builder = new SynonymQuery.Builder(field);
+        for (BytesRef term : originals) {
+            builder.addTerm(new Term(field, term));
+        }
+        for (BytesRef term : synonyms) {
+            builder.addTerm(new Term(field, term), synonym_type_boost);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Matches the terms of a path as a phrase, or as a conjunction if the field does not
+     * index positions.
+     */
+    private Query newPathQuery(String field, AnalyzedText positionTerms, int[] path) {
+        final MappedFieldType fieldType = context == null ? null : context.fieldMapper(field);
+        if (fieldType != null && fieldType.indexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) < 0) {
+            BooleanQuery.Builder q = new BooleanQuery.Builder();
+            for (int ord : path) {
+                q.add(newTermQuery(field, positionTerms.term(ord)), BooleanClause.Occur.MUST);
+            }
+            return q.build();
+        }
+        BytesRef[] terms = new BytesRef[path.length];
+        for (int i = 0; i < path.length; i++) {
+            terms[i] = positionTerms.term(path[i]);
+        }
+        return new PhraseQuery(field, terms);
+    }
+
+    private static Query disjunction(List<Query> queries) {
+        if (queries.isEmpty()) {
+            return null;
+        } else if (queries.size() == 1) {
+            return queries.get(0);
+        }
+        BooleanQuery.Builder q = new BooleanQuery.Builder();
+        for (Query query : queries) {
+            q.add(query, BooleanClause.Occur.SHOULD);
         }
         return q.build();
     }
 
+    private static String segmentToString(AnalyzedText positionTerms, int start, int end) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = positionTerms.positionStart(start); i < positionTerms.positionEnd(end - 1); i++) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(positionTerms.term(i).utf8ToString());
+        }
+        return builder.toString();
+    }
 
     protected Analyzer getAnalyzer(MappedFieldType fieldType) {
         if (analyzer == null) {
@@ -239,6 +1294,7 @@ public class SynonymMatchQuery {
     }
 
     protected Query zeroTermsQuery() {
+        services.stats().onZeroTerms();
         switch (zeroTermsQuery) {
             case NULL:
                 return null;
@@ -0,0 +1,71 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Wraps the query built by synonym_match together with its {@link ExpansionReport}.
+ * The report is part of {@link #toString(String)}, which the profile API uses as the
+ * query description. Matching and scoring are those of the wrapped query, and the report
+ * takes no part in equality so it does not change cache keys.
+ */
+public final class SynonymMatchReportQuery extends Query {
+
+    private final Query query;
+    private final String report;
+
+    public SynonymMatchReportQuery(Query query, String report) {
+        this.query = Objects.requireNonNull(query);
+        this.report = Objects.requireNonNull(report);
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        Query rewritten = query.rewrite(reader);
+        if (rewritten != query) {
+            return new SynonymMatchReportQuery(rewritten, report);
+        }
+        return super.rewrite(reader);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return searcher.createWeight(query, scoreMode, boost);
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        query.visit(visitor.getSubVisitor(BooleanClause.Occur.MUST, this));
+    }
+
+    @Override
+    public String toString(String field) {
+        return "SynonymMatch(" + query.toString(field) + ", " + report + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && query.equals(((SynonymMatchReportQuery) other).query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + query.hashCode();
+    }
+}
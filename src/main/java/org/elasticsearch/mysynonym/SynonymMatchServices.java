@@ -0,0 +1,99 @@
+package org.elasticsearch.mysynonym;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The node level state of synonym_match. The plugin creates one per node in
+ * {@code createComponents} and hands it to its index listeners and, by injection, to its
+ * transport actions. Nodes that share a JVM, e.g. an embedded test cluster, each keep
+ * their own state.
+ *
+ * Builders only get the {@link QueryShardContext} of the shard they build a query for,
+ * whether they were parsed, read from the wire or, for a local shard, created with the
+ * Java API. They look the services up with {@link #of(QueryShardContext)}, by the
+ * {@link MapperService} of the index, which the plugin registers when the node creates
+ * the index.
+ */
+public final class SynonymMatchServices {
+
+    /** Services of queries built outside of a registered index, e.g. by a benchmark. */
+    public static final SynonymMatchServices NONE = new SynonymMatchServices(new SynonymMatchStats(), null, null);
+
+    // an index has one MapperService per node, it is not equal to any other
+    private static final Map<MapperService, SynonymMatchServices> BY_INDEX = new ConcurrentHashMap<>();
+
+    private final SynonymMatchStats stats;
+    private final SynonymAnalysisCache analysisCache;
+    private final SynonymFuzzyAutomatonCache fuzzyCache;
+
+    // set by SynonymMatchBreakerService, plugins only get the breaker service by injection
+    private volatile CircuitBreakerService breakerService;
+
+    public SynonymMatchServices(SynonymMatchStats stats, @Nullable SynonymAnalysisCache analysisCache,
+                                @Nullable SynonymFuzzyAutomatonCache fuzzyCache) {
+        this.stats = stats;
+        this.analysisCache = analysisCache;
+        this.fuzzyCache = fuzzyCache;
+    }
+
+    /** Returns the given services, or {@link #NONE} if there are none, e.g. on a transport client. */
+    public static SynonymMatchServices orNone(SynonymMatchServices services) {
+        return services == null ? NONE : services;
+    }
+
+    /**
+     * Returns the services of the node that created the index of the context, or {@link #NONE}
+     * for an index the node only creates to validate something, e.g. an alias filter.
+     */
+    public static SynonymMatchServices of(@Nullable QueryShardContext context) {
+        if (context == null) {
+            return NONE;
+        }
+        return orNone(BY_INDEX.get(context.getMapperService()));
+    }
+
+    /** Registers the services of the node that created the index, see {@link #of(QueryShardContext)}. */
+    public static void register(IndexService indexService, SynonymMatchServices services) {
+        BY_INDEX.put(indexService.mapperService(), services);
+    }
+
+    public static void unregister(IndexService indexService) {
+        BY_INDEX.remove(indexService.mapperService());
+    }
+
+    public SynonymMatchStats stats() {
+        return stats;
+    }
+
+    /** Returns the cache of analyzed query text, or {@code null} if analysis is not cached. */
+    @Nullable
+    public SynonymAnalysisCache analysisCache() {
+        return analysisCache;
+    }
+
+    /** Returns the cache of fuzzy automata, or {@code null} if they are compiled for every query. */
+    @Nullable
+    public SynonymFuzzyAutomatonCache fuzzyCache() {
+        return fuzzyCache;
+    }
+
+    /** Returns the request breaker of the node, or {@code null} if the queries are not accounted. */
+    @Nullable
+    public CircuitBreaker breaker() {
+        // the node replaces the breaker when its limit is updated
+        final CircuitBreakerService breakerService = this.breakerService;
+        return breakerService == null ? null : breakerService.getBreaker(CircuitBreaker.REQUEST);
+    }
+
+    void setBreakerService(@Nullable CircuitBreakerService breakerService) {
+        this.breakerService = breakerService;
+    }
+}
@@ -0,0 +1,36 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryShardContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the synonym_match queries whose construction on a shard, analysis included, took
+ * longer than {@code index.synonym_match.slowlog.threshold}, with their {@link ExpansionReport}.
+ */
+public final class SynonymMatchSlowLog {
+
+    public static final Setting<TimeValue> THRESHOLD_SETTING =
+            Setting.timeSetting("index.synonym_match.slowlog.threshold", TimeValue.MINUS_ONE,
+                    TimeValue.MINUS_ONE, Setting.Property.Dynamic, Setting.Property.IndexScope);
+
+    private static final Logger logger = LogManager.getLogger("index.synonym_match.slowlog");
+
+    private SynonymMatchSlowLog() {
+    }
+
+    static void maybeLog(QueryShardContext context, long tookNanos, String queryName, Object fields,
+                         Object value, ExpansionReport report) {
+        final TimeValue threshold = context.getIndexSettings().getValue(THRESHOLD_SETTING);
+        if (threshold.nanos() < 0 || tookNanos < threshold.nanos()) {
+            return;
+        }
+        logger.warn("[{}][{}] took[{}], took_millis[{}], query[{}], fields{}, text[{}], {}",
+                context.index().getName(), context.getShardId(), TimeValue.timeValueNanos(tookNanos),
+                TimeUnit.NANOSECONDS.toMillis(tookNanos), queryName, fields, value, report.describe());
+    }
+}
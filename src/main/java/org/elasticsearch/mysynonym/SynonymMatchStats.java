@@ -0,0 +1,295 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node level counters of synonym_match. Recording is a few {@link LongAdder} increments,
+ * so it is always on.
+ *
+ * Histograms have power of two buckets: bucket {@code b} counts the values in
+ * {@code [2^(b-1), 2^b)}, bucket 0 counts zeros.
+ */
+public final class SynonymMatchStats {
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder zeroTermsQueries = new LongAdder();
+    private final LongAdder prunedSynonyms = new LongAdder();
+    private final LongAdder flattenedGraphs = new LongAdder();
+    private final Histogram toQueryNanos = new Histogram();
+    private final Histogram analysisNanos = new Histogram();
+    private final Histogram positions = new Histogram();
+    private final Histogram terms = new Histogram();
+    private final Histogram synonymsPerPosition = new Histogram();
+    private final Histogram clauses = new Histogram();
+    private final Histogram warmupNanos = new Histogram();
+
+    /** Records the time spent building one synonym_match query, analysis included. */
+    public void onQuery(long nanos) {
+        queries.increment();
+        toQueryNanos.record(nanos);
+    }
+
+    /** Records the time spent to get the terms of a text, from the cache or from the analyzer. */
+    public void onAnalysis(long nanos) {
+        analysisNanos.record(nanos);
+    }
+
+    /** Records the size of the terms a query is built from. */
+    public void onExpansion(AnalyzedText positionTerms) {
+        positions.record(positionTerms.positionCount());
+        terms.record(positionTerms.termCount());
+        for (int position = 0; position < positionTerms.positionCount(); position++) {
+            int synonyms = 0;
+            for (int i = positionTerms.positionStart(position); i < positionTerms.positionEnd(position); i++) {
+                if (positionTerms.type(i) == TermType.SYNONYM) {
+                    synonyms++;
+                }
+            }
+            synonymsPerPosition.record(synonyms);
+        }
+    }
+
+    /** Records the number of top level clauses of a built query. */
+    public void onBuilt(Query query) {
+        clauses.record(query instanceof BooleanQuery ? ((BooleanQuery) query).clauses().size() : 1);
+    }
+
+    /** Records the time spent warming a shard, see {@link SynonymMatchWarmer}. */
+    public void onWarmup(long nanos) {
+        warmupNanos.record(nanos);
+    }
+
+    public void onZeroTerms() {
+        zeroTermsQueries.increment();
+    }
+
+    public void onReport(ExpansionReport report) {
+        prunedSynonyms.add(report.prunedSynonyms().size());
+        flattenedGraphs.add(report.flattenedGraphs().size());
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(queries.sum(), zeroTermsQueries.sum(), prunedSynonyms.sum(), flattenedGraphs.sum(),
+                toQueryNanos.snapshot(), analysisNanos.snapshot(), positions.snapshot(), terms.snapshot(),
+                synonymsPerPosition.snapshot(), clauses.snapshot(), warmupNanos.snapshot());
+    }
+
+    static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE + 1];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+            sum.add(value);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new HistogramSnapshot(counts, sum.sum());
+        }
+    }
+
+    /**
+     * Point in time copy of a histogram, snapshots of several nodes can be added together.
+     */
+    public static final class HistogramSnapshot implements Writeable, ToXContentFragment {
+        private final long[] counts;
+        private final long sum;
+
+        HistogramSnapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+        }
+
+        public HistogramSnapshot(StreamInput in) throws IOException {
+            counts = in.readVLongArray();
+            sum = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLongArray(counts);
+            out.writeVLong(sum);
+        }
+
+        public long count() {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        /** Upper bound of the bucket that holds the given quantile. */
+        public long quantile(double q) {
+            final long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        HistogramSnapshot add(HistogramSnapshot other) {
+            long[] merged = new long[Math.max(counts.length, other.counts.length)];
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] = (i < counts.length ? counts[i] : 0) + (i < other.counts.length ? other.counts[i] : 0);
+            }
+            return new HistogramSnapshot(merged, sum + other.sum);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            final long count = count();
+            builder.field("count", count);
+            builder.field("sum", sum);
+            builder.field("avg", count == 0 ? 0 : (double) sum / count);
+            builder.field("p50", quantile(0.5));
+            builder.field("p99", quantile(0.99));
+            builder.field("max", quantile(1));
+            return builder;
+        }
+    }
+
+    /**
+     * Point in time copy of the stats of a node.
+     */
+    public static final class Snapshot implements Writeable, ToXContentFragment {
+        private final long queries;
+        private final long zeroTermsQueries;
+        private final long prunedSynonyms;
+        private final long flattenedGraphs;
+        private final HistogramSnapshot toQueryNanos;
+        private final HistogramSnapshot analysisNanos;
+        private final HistogramSnapshot positions;
+        private final HistogramSnapshot terms;
+        private final HistogramSnapshot synonymsPerPosition;
+        private final HistogramSnapshot clauses;
+        private final HistogramSnapshot warmupNanos;
+
+        Snapshot(long queries, long zeroTermsQueries, long prunedSynonyms, long flattenedGraphs,
+                 HistogramSnapshot toQueryNanos, HistogramSnapshot analysisNanos, HistogramSnapshot positions,
+                 HistogramSnapshot terms, HistogramSnapshot synonymsPerPosition, HistogramSnapshot clauses,
+                 HistogramSnapshot warmupNanos) {
+            this.queries = queries;
+            this.zeroTermsQueries = zeroTermsQueries;
+            this.prunedSynonyms = prunedSynonyms;
+            this.flattenedGraphs = flattenedGraphs;
+            this.toQueryNanos = toQueryNanos;
+            this.analysisNanos = analysisNanos;
+            this.positions = positions;
+            this.terms = terms;
+            this.synonymsPerPosition = synonymsPerPosition;
+            this.clauses = clauses;
+            this.warmupNanos = warmupNanos;
+        }
+
+        public Snapshot(StreamInput in) throws IOException {
+            queries = in.readVLong();
+            zeroTermsQueries = in.readVLong();
+            prunedSynonyms = in.readVLong();
+            flattenedGraphs = in.readVLong();
+            toQueryNanos = new HistogramSnapshot(in);
+            analysisNanos = new HistogramSnapshot(in);
+            positions = new HistogramSnapshot(in);
+            terms = new HistogramSnapshot(in);
+            synonymsPerPosition = new HistogramSnapshot(in);
+            clauses = new HistogramSnapshot(in);
+            warmupNanos = new HistogramSnapshot(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(queries);
+            out.writeVLong(zeroTermsQueries);
+            out.writeVLong(prunedSynonyms);
+            out.writeVLong(flattenedGraphs);
+            toQueryNanos.writeTo(out);
+            analysisNanos.writeTo(out);
+            positions.writeTo(out);
+            terms.writeTo(out);
+            synonymsPerPosition.writeTo(out);
+            clauses.writeTo(out);
+            warmupNanos.writeTo(out);
+        }
+
+        public long queries() {
+            return queries;
+        }
+
+        public long zeroTermsQueries() {
+            return zeroTermsQueries;
+        }
+
+        /** Sums the stats of two nodes. */
+        public Snapshot add(Snapshot other) {
+            return new Snapshot(queries + other.queries, zeroTermsQueries + other.zeroTermsQueries,
+                    prunedSynonyms + other.prunedSynonyms, flattenedGraphs + other.flattenedGraphs,
+                    toQueryNanos.add(other.toQueryNanos), analysisNanos.add(other.analysisNanos),
+                    positions.add(other.positions), terms.add(other.terms),
+                    synonymsPerPosition.add(other.synonymsPerPosition), clauses.add(other.clauses),
+                    warmupNanos.add(other.warmupNanos));
+        }
+
+        public static Snapshot empty() {
+            return new SynonymMatchStats().snapshot();
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("queries", queries);
+            builder.field("zero_terms_queries", zeroTermsQueries);
+            builder.field("pruned_synonyms", prunedSynonyms);
+            builder.field("flattened_graphs", flattenedGraphs);
+            field(builder, params, "to_query_time_in_nanos", toQueryNanos);
+            field(builder, params, "analysis_time_in_nanos", analysisNanos);
+            field(builder, params, "positions_per_query", positions);
+            field(builder, params, "terms_per_query", terms);
+            field(builder, params, "synonyms_per_position", synonymsPerPosition);
+            field(builder, params, "clauses_per_query", clauses);
+            field(builder, params, "warmup_time_in_nanos", warmupNanos);
+            return builder;
+        }
+
+        private static void field(XContentBuilder builder, Params params, String name,
+                                  HistogramSnapshot histogram) throws IOException {
+            builder.startObject(name);
+            histogram.toXContent(builder, params);
+            builder.endObject();
+        }
+    }
+}
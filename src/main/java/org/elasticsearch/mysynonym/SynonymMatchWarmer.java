@@ -0,0 +1,148 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.IndexEventListener;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Warms a shard for synonym_match once it is recovered: the configured synonym analyzers
+ * are run once and the sample queries are built through {@link SynonymMatchQuery} and
+ * executed, so that the analyzers, the analysis cache, the query building code and the
+ * term dictionaries are hot when user traffic arrives.
+ *
+ * The warmup is triggered when the shard moves to {@link IndexShardState#POST_RECOVERY},
+ * after every recovery: node restart, relocation or new replica. State changes are notified
+ * under the mutex of the shard, which also guards the cluster state updates of the shard,
+ * so the warmup is forked to the warmer thread pool instead of running in the callback.
+ * The shard may be reported as started while it is warming. Failures are logged and do not
+ * fail the shard.
+ */
+public final class SynonymMatchWarmer implements IndexEventListener {
+
+    public static final Setting<List<String>> ANALYZERS_SETTING =
+            Setting.listSetting("index.synonym_match.warmup.synonym_analyzers", Collections.emptyList(),
+                    Function.identity(), Property.Dynamic, Property.IndexScope);
+
+    public static final Setting<List<String>> QUERIES_SETTING =
+            Setting.listSetting("index.synonym_match.warmup.queries", Collections.emptyList(),
+                    Function.identity(), Property.Dynamic, Property.IndexScope);
+
+    public static final Setting<String> FIELD_SETTING =
+            Setting.simpleString("index.synonym_match.warmup.field", Property.Dynamic, Property.IndexScope);
+
+    private static final Logger logger = LogManager.getLogger(SynonymMatchWarmer.class);
+
+    // analyzed when no queries are configured, and by the analyzers when no field is configured
+    private static final String SAMPLE_TEXT = "synonym match warmup";
+    private static final String SAMPLE_FIELD = "_synonym_match_warmup";
+
+    private final SynonymMatchServices services;
+
+    // one listener per index, set before its shards are created
+    private volatile IndexService indexService;
+
+    public SynonymMatchWarmer(SynonymMatchServices services) {
+        this.services = services;
+    }
+
+    @Override
+    public void afterIndexCreated(IndexService indexService) {
+        this.indexService = indexService;
+    }
+
+    @Override
+    public void indexShardStateChanged(IndexShard indexShard, @Nullable IndexShardState previousState,
+                                       IndexShardState currentState, @Nullable String reason) {
+        final IndexService indexService = this.indexService;
+        if (currentState == IndexShardState.POST_RECOVERY && indexService != null
+                // the shards of a closed index are recovered without searcher or caches
+                && indexShard.indexSettings().getIndexMetaData().getState() == IndexMetaData.State.OPEN) {
+            try {
+                indexService.getThreadPool().executor(ThreadPool.Names.WARMER).execute(() -> warm(indexService, indexShard));
+            } catch (EsRejectedExecutionException e) {
+                // the node is shutting down
+                logger.debug("{} synonym_match warmup rejected", indexShard.shardId());
+            }
+        }
+    }
+
+    private void warm(IndexService indexService, IndexShard shard) {
+        final IndexSettings indexSettings = shard.indexSettings();
+        final List<String> analyzers = indexSettings.getValue(ANALYZERS_SETTING);
+        final List<String> queries = indexSettings.getValue(QUERIES_SETTING);
+        final String field = indexSettings.getValue(FIELD_SETTING);
+        if (analyzers.isEmpty() && queries.isEmpty()) {
+            return;
+        }
+        final IndexShardState state = shard.state();
+        if (state != IndexShardState.POST_RECOVERY && state != IndexShardState.STARTED) {
+            // closed or relocated while the task was queued
+            return;
+        }
+        final List<String> texts = queries.isEmpty() ? Collections.singletonList(SAMPLE_TEXT) : queries;
+        final long start = System.nanoTime();
+        try (Engine.Searcher searcher = shard.acquireSearcher("synonym_match_warmup")) {
+            final QueryShardContext context = indexService.newQueryShardContext(shard.shardId().id(),
+                    searcher.reader(), System::currentTimeMillis, null);
+            for (String name : analyzers) {
+                // a missing analyzer fails here instead of on the first query
+                if (indexService.getIndexAnalyzers().get(name) == null) {
+                    throw new IllegalArgumentException("No analyzer found for [" + name + "]");
+                }
+            }
+            if (field.isEmpty()) {
+                // no field to build queries on, only the analyzers are run
+                for (String name : analyzers) {
+                    Analyzer analyzer = indexService.getIndexAnalyzers().get(name);
+                    try (SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, services)) {
+                        for (String text : texts) {
+                            matchQuery.analyze(analyzer, SAMPLE_FIELD, text);
+                        }
+                    }
+                }
+            } else {
+                // without synonym analyzers the queries are built with the search analyzer of the field
+                for (String analyzer : analyzers.isEmpty() ? Collections.<String>singletonList(null) : analyzers) {
+                    for (String text : texts) {
+                        try (SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, services)) {
+                            if (analyzer != null) {
+                                matchQuery.setAnalyzer(analyzer);
+                            }
+                            matchQuery.setSynonym_type_boost(SynonymMatchQuery.DEFAULT_SYNONYM_BOOST);
+                            Query query = matchQuery.parse(field, text);
+                            if (query != null) {
+                                searcher.searcher().count(query);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warn(new ParameterizedMessage("{} synonym_match warmup failed", shard.shardId()), e);
+            return;
+        }
+        final long took = System.nanoTime() - start;
+        services.stats().onWarmup(took);
+        logger.debug("{} synonym_match warmup took [{}]", shard.shardId(), TimeValue.timeValueNanos(took));
+    }
+}
@@ -0,0 +1,499 @@
+package org.elasticsearch.mysynonym;
+
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+import org.elasticsearch.index.search.QueryParserHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Same as {@link SynonymMatchBuilder} but runs against several fields. Fields that share
+ * the same search analyzer are analyzed only once.
+ */
+public class SynonymMultiMatchBuilder extends AbstractQueryBuilder<SynonymMultiMatchBuilder> {
+
+    public static final ParseField QUERY_FIELD = new ParseField("query");
+    public static final ParseField FIELDS_FIELD = new ParseField("fields");
+    public static final ParseField TYPE_FIELD = new ParseField("type");
+    public static final ParseField TIE_BREAKER_FIELD = new ParseField("tie_breaker");
+
+    /** The name for the multi match query */
+    public static final String NAME = "synonym_multi_match";
+
+    public static final Type DEFAULT_TYPE = Type.BEST_FIELDS;
+
+    public enum Type implements Writeable {
+        // the score of the best matching field, plus tie_breaker times the others
+        BEST_FIELDS(0),
+        // the sum of the scores of all fields
+        MOST_FIELDS(1),
+        // each position is matched against all fields, as if they were one field
+        CROSS_FIELDS(2);
+
+        private final int ordinal;
+
+        Type(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        public static Type readFromStream(StreamInput in) throws IOException {
+            int ord = in.readVInt();
+            for (Type type : Type.values()) {
+                if (type.ordinal == ord) {
+                    return type;
+                }
+            }
+            throw new ElasticsearchException("unknown serialized type [" + ord + "]");
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(this.ordinal);
+        }
+
+        public static Type parse(String value) {
+            for (Type type : Type.values()) {
+                if (type.name().equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    private final Object value;
+    private final Map<String, Float> fieldsBoosts;
+    private Type type = DEFAULT_TYPE;
+    private float tieBreaker = 0.0f;
+    private String analyzer;
+    private Operator operator = SynonymMatchBuilder.DEFAULT_OPERATOR;
+    private String minimumShouldMatch;
+    private SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery = SynonymMatchQuery.DEFAULT_ZERO_TERMS_QUERY;
+    private float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+    private SynonymMatchQuery.SynonymScoring synonymScoring = SynonymMatchQuery.DEFAULT_SYNONYM_SCORING;
+    private int maxGraphPaths = SynonymMatchQuery.DEFAULT_MAX_GRAPH_PATHS;
+    private boolean diagnostics;
+
+    /**
+     * Constructs a new multi match query. Fields may carry a boost, e.g. {@code title^2}.
+     */
+    public SynonymMultiMatchBuilder(Object value, String... fields) {
+        if (value == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires query value");
+        }
+        if (fields == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires fields at initialization time");
+        }
+        this.value = value;
+        this.fieldsBoosts = new TreeMap<>();
+        for (String field : fields) {
+            field(field);
+        }
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public SynonymMultiMatchBuilder(StreamInput in) throws IOException {
+        super(in);
+        value = in.readGenericValue();
+        fieldsBoosts = new TreeMap<>(in.readMap(StreamInput::readString, StreamInput::readFloat));
+        type = Type.readFromStream(in);
+        tieBreaker = in.readFloat();
+        analyzer = in.readOptionalString();
+        operator = Operator.readFromStream(in);
+        minimumShouldMatch = in.readOptionalString();
+        zeroTermsQuery = SynonymMatchQuery.ZeroTermsQuery.readFromStream(in);
+        synonym_type_boost = in.readFloat();
+        synonymScoring = SynonymMatchQuery.SynonymScoring.readFromStream(in);
+        maxGraphPaths = in.readVInt();
+        diagnostics = in.readBoolean();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeGenericValue(value);
+        out.writeMap(fieldsBoosts, StreamOutput::writeString, StreamOutput::writeFloat);
+        type.writeTo(out);
+        out.writeFloat(tieBreaker);
+        out.writeOptionalString(analyzer);
+        operator.writeTo(out);
+        out.writeOptionalString(minimumShouldMatch);
+        zeroTermsQuery.writeTo(out);
+        out.writeFloat(synonym_type_boost);
+        synonymScoring.writeTo(out);
+        out.writeVInt(maxGraphPaths);
+        out.writeBoolean(diagnostics);
+    }
+
+    public Object value() {
+        return value;
+    }
+
+    /** Adds a field to run the query against, with an optional {@code ^boost} suffix. */
+    public SynonymMultiMatchBuilder field(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("supplied field is null or empty.");
+        }
+        fieldsBoosts.putAll(QueryParserHelper.parseFieldsAndWeights(java.util.Collections.singletonList(field)));
+        return this;
+    }
+
+    /** Adds a field to run the query against with a specific boost. */
+    public SynonymMultiMatchBuilder field(String field, float boost) {
+        if (field == null) {
+            throw new IllegalArgumentException("supplied field is null or empty.");
+        }
+        this.fieldsBoosts.put(field, boost);
+        return this;
+    }
+
+    public Map<String, Float> fields() {
+        return fieldsBoosts;
+    }
+
+    public SynonymMultiMatchBuilder type(Type type) {
+        if (type == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires type to be non-null");
+        }
+        this.type = type;
+        return this;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * For best_fields and cross_fields, the score of the other matching fields is multiplied
+     * by this value and added to the best score. Defaults to {@code 0.0}.
+     */
+    public SynonymMultiMatchBuilder tieBreaker(float tieBreaker) {
+        this.tieBreaker = tieBreaker;
+        return this;
+    }
+
+    public float tieBreaker() {
+        return tieBreaker;
+    }
+
+    /**
+     * Explicitly set the analyzer to use. Defaults to use explicit mapping config for the field, or, if not
+     * set, the default search analyzer.
+     */
+    public SynonymMultiMatchBuilder analyzer(String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    public String analyzer() {
+        return analyzer;
+    }
+
+    public SynonymMultiMatchBuilder operator(Operator operator) {
+        if (operator == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires operator to be non-null");
+        }
+        this.operator = operator;
+        return this;
+    }
+
+    public Operator operator() {
+        return operator;
+    }
+
+    public SynonymMultiMatchBuilder minimumShouldMatch(String minimumShouldMatch) {
+        this.minimumShouldMatch = minimumShouldMatch;
+        return this;
+    }
+
+    public String minimumShouldMatch() {
+        return minimumShouldMatch;
+    }
+
+    public SynonymMultiMatchBuilder zeroTermsQuery(SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery) {
+        if (zeroTermsQuery == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires zeroTermsQuery to be non-null");
+        }
+        this.zeroTermsQuery = zeroTermsQuery;
+        return this;
+    }
+
+    public SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery() {
+        return zeroTermsQuery;
+    }
+
+    public SynonymMultiMatchBuilder synonym_type_boost(float synonym_type_boost) {
+        this.synonym_type_boost = synonym_type_boost;
+        return this;
+    }
+
+    public float synonym_type_boost() {
+        return synonym_type_boost;
+    }
+
+    public SynonymMultiMatchBuilder synonymScoring(SynonymMatchQuery.SynonymScoring synonymScoring) {
+        if (synonymScoring == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires synonymScoring to be non-null");
+        }
+        this.synonymScoring = synonymScoring;
+        return this;
+    }
+
+    public SynonymMatchQuery.SynonymScoring synonymScoring() {
+        return synonymScoring;
+    }
+
+    /** See {@link SynonymMatchBuilder#maxGraphPaths(int)}. */
+    public SynonymMultiMatchBuilder maxGraphPaths(int maxGraphPaths) {
+        if (maxGraphPaths < 1) {
+            throw new IllegalArgumentException("[" + NAME + "] requires max_graph_paths to be positive");
+        }
+        this.maxGraphPaths = maxGraphPaths;
+        return this;
+    }
+
+    public int maxGraphPaths() {
+        return maxGraphPaths;
+    }
+
+    /** See {@link SynonymMatchBuilder#diagnostics(boolean)}. */
+    public SynonymMultiMatchBuilder diagnostics(boolean diagnostics) {
+        this.diagnostics = diagnostics;
+        return this;
+    }
+
+    public boolean diagnostics() {
+        return diagnostics;
+    }
+
+    @Override
+    public void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(QUERY_FIELD.getPreferredName(), value);
+        builder.startArray(FIELDS_FIELD.getPreferredName());
+        for (Map.Entry<String, Float> fieldEntry : this.fieldsBoosts.entrySet()) {
+            builder.value(fieldEntry.getKey() + "^" + fieldEntry.getValue());
+        }
+        builder.endArray();
+        builder.field(TYPE_FIELD.getPreferredName(), type.toString().toLowerCase(Locale.ROOT));
+        builder.field(TIE_BREAKER_FIELD.getPreferredName(), tieBreaker);
+        builder.field(SynonymMatchBuilder.OPERATOR_FIELD.getPreferredName(), operator.toString());
+        if (analyzer != null) {
+            builder.field(SynonymMatchBuilder.ANALYZER_FIELD.getPreferredName(), analyzer);
+        }
+        builder.field(SynonymMatchBuilder.SYNONYM_BOOST_FIELD.getPreferredName(), synonym_type_boost);
+        builder.field(SynonymMatchBuilder.SYNONYM_SCORING_FIELD.getPreferredName(),
+                synonymScoring.toString().toLowerCase(Locale.ROOT));
+        builder.field(SynonymMatchBuilder.MAX_GRAPH_PATHS_FIELD.getPreferredName(), maxGraphPaths);
+        if (minimumShouldMatch != null) {
+            builder.field(SynonymMatchBuilder.MINIMUM_SHOULD_MATCH_FIELD.getPreferredName(), minimumShouldMatch);
+        }
+        builder.field(SynonymMatchBuilder.ZERO_TERMS_QUERY_FIELD.getPreferredName(), zeroTermsQuery.toString());
+        if (diagnostics) {
+            builder.field(SynonymMatchBuilder.DIAGNOSTICS_FIELD.getPreferredName(), diagnostics);
+        }
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
+
+    @Override
+    protected Query doToQuery(QueryShardContext context) throws IOException {
+        // validate context specific fields
+        if (analyzer != null && context.getIndexAnalyzers().get(analyzer) == null) {
+            throw new QueryShardException(context, "[" + NAME + "] analyzer [" + analyzer + "] not found");
+        }
+
+        final long start = System.nanoTime();
+        final SynonymMatchServices services = SynonymMatchServices.of(context);
+        SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, services);
+        if (analyzer != null) {
+            matchQuery.setAnalyzer(analyzer);
+        }
+        matchQuery.setSynonym_type_boost(synonym_type_boost);
+        matchQuery.setSynonymScoring(synonymScoring);
+        matchQuery.setMaxGraphPaths(maxGraphPaths);
+        matchQuery.setOccur(operator.toBooleanClauseOccur());
+        matchQuery.setZeroTermsQuery(zeroTermsQuery);
+        matchQuery.setMergeRepeatedPositions(minimumShouldMatch == null);
+        Query query;
+        try {
+            query = matchQuery.parse(fieldsBoosts, value, type, tieBreaker, minimumShouldMatch);
+        } finally {
+            matchQuery.close();
+        }
+        final ExpansionReport report = matchQuery.getExpansionReport();
+        if (query != null && diagnostics) {
+            query = new SynonymMatchReportQuery(query, report.describe());
+        } else if (query != null && report.isEmpty() == false) {
+            query = new SynonymMatchReportQuery(query, report.toString());
+        }
+        final long took = System.nanoTime() - start;
+        SynonymMatchStats stats = services.stats();
+        stats.onReport(report);
+        stats.onQuery(took);
+        SynonymMatchSlowLog.maybeLog(context, took, NAME, fieldsBoosts.keySet(), value, report);
+        return query;
+    }
+
+    @Override
+    protected boolean doEquals(SynonymMultiMatchBuilder other) {
+        return Objects.equals(value, other.value) &&
+                Objects.equals(fieldsBoosts, other.fieldsBoosts) &&
+                Objects.equals(type, other.type) &&
+                Objects.equals(tieBreaker, other.tieBreaker) &&
+                Objects.equals(analyzer, other.analyzer) &&
+                Objects.equals(operator, other.operator) &&
+                Objects.equals(minimumShouldMatch, other.minimumShouldMatch) &&
+                Objects.equals(zeroTermsQuery, other.zeroTermsQuery) &&
+                Objects.equals(synonym_type_boost, other.synonym_type_boost) &&
+                Objects.equals(synonymScoring, other.synonymScoring) &&
+                maxGraphPaths == other.maxGraphPaths &&
+                diagnostics == other.diagnostics;
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(value, fieldsBoosts, type, tieBreaker, analyzer, operator, minimumShouldMatch,
+                zeroTermsQuery, synonym_type_boost, synonymScoring, maxGraphPaths, diagnostics);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    public static SynonymMultiMatchBuilder fromXContent(XContentParser parser) throws IOException {
+        Object value = null;
+        List<String> fields = new ArrayList<>();
+        Type type = DEFAULT_TYPE;
+        float tieBreaker = 0.0f;
+        String analyzer = null;
+        Operator operator = SynonymMatchBuilder.DEFAULT_OPERATOR;
+        String minimumShouldMatch = null;
+        SynonymMatchQuery.ZeroTermsQuery zeroTermsQuery = SynonymMatchQuery.DEFAULT_ZERO_TERMS_QUERY;
+        float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+        SynonymMatchQuery.SynonymScoring synonymScoring = SynonymMatchQuery.DEFAULT_SYNONYM_SCORING;
+        int maxGraphPaths = SynonymMatchQuery.DEFAULT_MAX_GRAPH_PATHS;
+        boolean diagnostics = false;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+        String queryName = null;
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (FIELDS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                if (token == XContentParser.Token.START_ARRAY) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        fields.add(parser.text());
+                    }
+                } else if (token.isValue()) {
+                    fields.add(parser.text());
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else if (token.isValue()) {
+                if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    value = parser.objectText();
+                } else if (TYPE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    type = Type.parse(parser.text());
+                    if (type == null) {
+                        throw new ParsingException(parser.getTokenLocation(),
+                                "[" + NAME + "] query does not support type " + parser.text());
+                    }
+                } else if (TIE_BREAKER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    tieBreaker = parser.floatValue();
+                } else if (SynonymMatchBuilder.ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    analyzer = parser.text();
+                } else if (SynonymMatchBuilder.OPERATOR_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    operator = Operator.fromString(parser.text());
+                } else if (SynonymMatchBuilder.MINIMUM_SHOULD_MATCH_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    minimumShouldMatch = parser.textOrNull();
+                } else if (SynonymMatchBuilder.SYNONYM_BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    synonym_type_boost = parser.floatValue();
+                } else if (SynonymMatchBuilder.MAX_GRAPH_PATHS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    maxGraphPaths = parser.intValue();
+                } else if (SynonymMatchBuilder.DIAGNOSTICS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    diagnostics = parser.booleanValue();
+                } else if (SynonymMatchBuilder.SYNONYM_SCORING_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    String synonymScoringValue = parser.text();
+                    if ("blended".equalsIgnoreCase(synonymScoringValue)) {
+                        synonymScoring = SynonymMatchQuery.SynonymScoring.BLENDED;
+                    } else if ("constant".equalsIgnoreCase(synonymScoringValue)) {
+                        synonymScoring = SynonymMatchQuery.SynonymScoring.CONSTANT;
+                    } else if ("index_time".equalsIgnoreCase(synonymScoringValue)) {
+                        synonymScoring = SynonymMatchQuery.SynonymScoring.INDEX_TIME;
+                    } else {
+                        throw new ParsingException(parser.getTokenLocation(),
+                                "Unsupported synonym_scoring value [" + synonymScoringValue + "]");
+                    }
+                } else if (SynonymMatchBuilder.ZERO_TERMS_QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    String zeroTermsValue = parser.text();
+                    if ("none".equalsIgnoreCase(zeroTermsValue)) {
+                        zeroTermsQuery = SynonymMatchQuery.ZeroTermsQuery.NONE;
+                    } else if ("all".equalsIgnoreCase(zeroTermsValue)) {
+                        zeroTermsQuery = SynonymMatchQuery.ZeroTermsQuery.ALL;
+                    } else {
+                        throw new ParsingException(parser.getTokenLocation(),
+                                "Unsupported zero_terms_query value [" + zeroTermsValue + "]");
+                    }
+                } else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    boost = parser.floatValue();
+                } else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    queryName = parser.text();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "[" + NAME + "] unknown token [" + token + "] after [" + currentFieldName + "]");
+            }
+        }
+
+        if (value == null) {
+            throw new ParsingException(parser.getTokenLocation(), "No text specified for synonym_multi_match query");
+        }
+        if (fields.isEmpty()) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires [fields]");
+        }
+
+        SynonymMultiMatchBuilder builder = new SynonymMultiMatchBuilder(value, fields.toArray(new String[0]));
+        builder.type(type);
+        builder.tieBreaker(tieBreaker);
+        builder.analyzer(analyzer);
+        builder.operator(operator);
+        builder.minimumShouldMatch(minimumShouldMatch);
+        builder.zeroTermsQuery(zeroTermsQuery);
+        builder.synonym_type_boost(synonym_type_boost);
+        builder.synonymScoring(synonymScoring);
+        builder.maxGraphPaths(maxGraphPaths);
+        builder.diagnostics(diagnostics);
+        builder.queryName(queryName);
+        builder.boost(boost);
+        return builder;
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.queries.payloads.PayloadDecoder;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Reads the marks of {@link SynonymMarkerFilter}: an occurrence that comes from a synonym
+ * scores {@code synonymBoost} times an original one.
+ */
+final class SynonymPayloadDecoder implements PayloadDecoder {
+
+    private final float synonymBoost;
+
+    SynonymPayloadDecoder(float synonymBoost) {
+        this.synonymBoost = synonymBoost;
+    }
+
+    @Override
+    public float computePayloadFactor(BytesRef payload) {
+        if (payload == null || payload.length == 0 || payload.bytes[payload.offset] != TermType.SYNONYM) {
+            return 1f;
+        }
+        return synonymBoost;
+    }
+
+    // part of the equality of PayloadScoreQuery, i.e. of the query cache keys
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SynonymPayloadDecoder && Float.compare(synonymBoost, ((SynonymPayloadDecoder) o).synonymBoost) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Float.hashCode(synonymBoost);
+    }
+
+    @Override
+    public String toString() {
+        return "synonym_boost=" + synonymBoost;
+    }
+}
@@ -0,0 +1,297 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Matches;
+import org.apache.lucene.search.MatchesUtils;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Query for one position of a synonym_match query. The original terms are scored
+ * normally, a document that matches any of the synonyms gets a constant
+ * {@code synonymScore} on top.
+ *
+ * Since the synonym contribution is a constant, the scorer reports exact upper bounds
+ * through {@link Scorer#getMaxScore(int)} and {@link Scorer#advanceShallow(int)}, based on
+ * the impacts of the original terms. A BooleanQuery over several positions uses these
+ * bounds to skip blocks where the positions cannot compete together.
+ *
+ * The minimum competitive score only reaches the scorer when the position is the top level
+ * query, i.e. a text of a single position: WANDScorer and BooleanScorer do not pass it on
+ * to their clauses. In that case, once it exceeds the synonym score, documents that only
+ * match a synonym can never make it to the top hits and the synonym postings are not
+ * iterated anymore. Within a BooleanQuery the synonym postings are always iterated.
+ */
+public final class SynonymPositionQuery extends Query {
+
+    private final Query originalQuery;
+    private final Query synonymQuery;
+    private final float synonymScore;
+
+    /**
+     * @param originalQuery the query on the original terms, or {@code null} if the position only has synonyms
+     * @param synonymQuery a query matching the synonym terms, its scores are ignored
+     * @param synonymScore the score added for a synonym match
+     */
+    public SynonymPositionQuery(Query originalQuery, Query synonymQuery, float synonymScore) {
+        this.originalQuery = originalQuery;
+        this.synonymQuery = Objects.requireNonNull(synonymQuery);
+        this.synonymScore = synonymScore;
+    }
+
+    public Query getOriginalQuery() {
+        return originalQuery;
+    }
+
+    public Query getSynonymQuery() {
+        return synonymQuery;
+    }
+
+    public float getSynonymScore() {
+        return synonymScore;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        Query original = originalQuery == null ? null : originalQuery.rewrite(reader);
+        Query synonyms = synonymQuery.rewrite(reader);
+        if (original != originalQuery || synonyms != synonymQuery) {
+            return new SynonymPositionQuery(original, synonyms, synonymScore);
+        }
+        return super.rewrite(reader);
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        QueryVisitor v = visitor.getSubVisitor(BooleanClause.Occur.SHOULD, this);
+        if (originalQuery != null) {
+            originalQuery.visit(v);
+        }
+        synonymQuery.visit(v);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        Weight original = originalQuery == null ? null : searcher.createWeight(originalQuery, scoreMode, boost);
+        Weight synonyms = searcher.createWeight(synonymQuery, ScoreMode.COMPLETE_NO_SCORES, 1f);
+        return new SynonymPositionWeight(original, synonyms, synonymScore * boost, scoreMode);
+    }
+
+    @Override
+    public String toString(String field) {
+        StringBuilder builder = new StringBuilder("SynonymPosition(");
+        if (originalQuery != null) {
+            builder.append(originalQuery.toString(field)).append(" | ");
+        }
+        return builder.append(synonymQuery.toString(field)).append(")^").append(synonymScore).toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (sameClassAs(other) == false) {
+            return false;
+        }
+        SynonymPositionQuery that = (SynonymPositionQuery) other;
+        return Objects.equals(originalQuery, that.originalQuery) &&
+                synonymQuery.equals(that.synonymQuery) &&
+                Float.compare(synonymScore, that.synonymScore) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + Objects.hash(originalQuery, synonymQuery, synonymScore);
+    }
+
+    private final class SynonymPositionWeight extends Weight {
+        private final Weight original;
+        private final Weight synonyms;
+        private final float synonymScore;
+        private final ScoreMode scoreMode;
+
+        SynonymPositionWeight(Weight original, Weight synonyms, float synonymScore, ScoreMode scoreMode) {
+            super(SynonymPositionQuery.this);
+            this.original = original;
+            this.synonyms = synonyms;
+            this.synonymScore = synonymScore;
+            this.scoreMode = scoreMode;
+        }
+
+        // still abstract in Weight, term collection goes through SynonymPositionQuery#visit
+        @Override
+        @SuppressWarnings("deprecation")
+        public void extractTerms(Set<Term> terms) {
+            if (original != null) {
+                original.extractTerms(terms);
+            }
+            synonyms.extractTerms(terms);
+        }
+
+        @Override
+        public Matches matches(LeafReaderContext context, int doc) throws IOException {
+            List<Matches> matches = new ArrayList<>(2);
+            if (original != null) {
+                Matches m = original.matches(context, doc);
+                if (m != null) {
+                    matches.add(m);
+                }
+            }
+            Matches m = synonyms.matches(context, doc);
+            if (m != null) {
+                matches.add(m);
+            }
+            return MatchesUtils.fromSubMatches(matches);
+        }
+
+        @Override
+        public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+            List<Explanation> details = new ArrayList<>(2);
+            float score = 0;
+            if (original != null) {
+                Explanation explanation = original.explain(context, doc);
+                if (explanation.isMatch()) {
+                    details.add(explanation);
+                    score += explanation.getValue().floatValue();
+                }
+            }
+            if (synonyms.explain(context, doc).isMatch()) {
+                details.add(Explanation.match(synonymScore, "synonym match"));
+                score += synonymScore;
+            }
+            if (details.isEmpty()) {
+                return Explanation.noMatch("no matching term");
+            }
+            return Explanation.match(score, "sum of:", details);
+        }
+
+        @Override
+        public Scorer scorer(LeafReaderContext context) throws IOException {
+            Scorer originalScorer = original == null ? null : original.scorer(context);
+            Scorer synonymScorer = synonyms.scorer(context);
+            if (synonymScorer == null) {
+                return originalScorer;
+            }
+            if (originalScorer == null) {
+                return new ConstantScoreScorer(this, synonymScore, scoreMode, synonymScorer.iterator());
+            }
+            return new SynonymPositionScorer(this, originalScorer, synonymScorer.iterator(), synonymScore);
+        }
+
+        @Override
+        public boolean isCacheable(LeafReaderContext ctx) {
+            return (original == null || original.isCacheable(ctx)) && synonyms.isCacheable(ctx);
+        }
+    }
+
+    /**
+     * Union of the original scorer and the synonym iterator. The synonym iterator stops
+     * driving the iteration once synonym only matches are not competitive, which requires
+     * the collector to set the minimum competitive score on this scorer directly.
+     */
+    static final class SynonymPositionScorer extends Scorer {
+        private final Scorer original;
+        private final DocIdSetIterator originalIterator;
+        private final DocIdSetIterator synonyms;
+        private final float synonymScore;
+        private final DocIdSetIterator iterator;
+        private boolean synonymsCompetitive = true;
+        private int doc = -1;
+
+        SynonymPositionScorer(Weight weight, Scorer original, DocIdSetIterator synonyms, float synonymScore) {
+            super(weight);
+            this.original = original;
+            this.originalIterator = original.iterator();
+            this.synonyms = synonyms;
+            this.synonymScore = synonymScore;
+            this.iterator = new DocIdSetIterator() {
+                @Override
+                public int docID() {
+                    return doc;
+                }
+
+                @Override
+                public int nextDoc() throws IOException {
+                    return advance(doc + 1);
+                }
+
+                @Override
+                public int advance(int target) throws IOException {
+                    int next = originalIterator.docID() < target ? originalIterator.advance(target) : originalIterator.docID();
+                    if (synonymsCompetitive) {
+                        int synonym = synonyms.docID() < target ? synonyms.advance(target) : synonyms.docID();
+                        next = Math.min(next, synonym);
+                    }
+                    return doc = next;
+                }
+
+                @Override
+                public long cost() {
+                    return originalIterator.cost() + synonyms.cost();
+                }
+            };
+        }
+
+        private boolean matchesSynonym() throws IOException {
+            if (synonyms.docID() < doc) {
+                synonyms.advance(doc);
+            }
+            return synonyms.docID() == doc;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return iterator;
+        }
+
+        @Override
+        public float score() throws IOException {
+            float score = originalIterator.docID() == doc ? original.score() : 0f;
+            return matchesSynonym() ? score + synonymScore : score;
+        }
+
+        @Override
+        public int advanceShallow(int target) throws IOException {
+            // the union may be on a synonym only document that is behind the original terms
+            return original.advanceShallow(Math.max(target, originalIterator.docID()));
+        }
+
+        @Override
+        public float getMaxScore(int upTo) throws IOException {
+            if (upTo < originalIterator.docID()) {
+                // the original terms do not match before their current document
+                return synonymScore;
+            }
+            return original.getMaxScore(upTo) + synonymScore;
+        }
+
+        @Override
+        public void setMinCompetitiveScore(float minScore) throws IOException {
+            if (minScore > synonymScore) {
+                // a document that only matches synonyms scores synonymScore at most
+                synonymsCompetitive = false;
+            }
+            // nextDown keeps the bound conservative when the subtraction rounds up
+            original.setMinCompetitiveScore(Math.max(0f, Math.nextDown(minScore - synonymScore)));
+        }
+    }
+}
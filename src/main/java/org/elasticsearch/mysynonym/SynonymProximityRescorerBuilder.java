@@ -0,0 +1,290 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryRewriteContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.search.rescore.QueryRescoreMode;
+import org.elasticsearch.search.rescore.QueryRescorer;
+import org.elasticsearch.search.rescore.RescoreContext;
+import org.elasticsearch.search.rescore.RescorerBuilder;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Rewards the top hits of each shard whose query words, or their synonyms, are close to each
+ * other, instead of a match_phrase clause that runs over every hit of the main query.
+ *
+ * The text is analyzed like synonym_match (same analysis cache, synonym pruning and limits)
+ * and the per position terms become a sloppy phrase over the original terms plus a sloppy
+ * phrase that also accepts the synonyms, weighted by synonym_type_boost (see
+ * {@link SynonymMatchQuery#parseProximity}). It is only run on the {@code window_size} top
+ * hits and combined with their score like the query rescorer.
+ *
+ * <pre>
+ * "rescore": {
+ *   "window_size": 50,
+ *   "synonym_proximity": {
+ *     "field": "content",
+ *     "query": "this class",
+ *     "synonym_analyzer": "match_ana",
+ *     "synonym_type_boost": 0.1,
+ *     "slop": 2
+ *   }
+ * }
+ * </pre>
+ */
+public class SynonymProximityRescorerBuilder extends RescorerBuilder<SynonymProximityRescorerBuilder> {
+
+    public static final String NAME = "synonym_proximity";
+
+    public static final ParseField FIELD_FIELD = new ParseField("field");
+    public static final ParseField QUERY_FIELD = new ParseField("query");
+    public static final ParseField SLOP_FIELD = new ParseField("slop");
+    public static final ParseField QUERY_WEIGHT_FIELD = new ParseField("query_weight");
+    public static final ParseField RESCORE_QUERY_WEIGHT_FIELD = new ParseField("rescore_query_weight");
+    public static final ParseField SCORE_MODE_FIELD = new ParseField("score_mode");
+
+    public static final int DEFAULT_SLOP = 2;
+
+    private final String fieldName;
+    private final Object value;
+    private String analyzer;
+    private float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+    private int slop = DEFAULT_SLOP;
+    private float queryWeight = 1.0f;
+    private float rescoreQueryWeight = 1.0f;
+    private QueryRescoreMode scoreMode = QueryRescoreMode.Total;
+
+    public SynonymProximityRescorerBuilder(String fieldName, Object value) {
+        if (fieldName == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires field");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("[" + NAME + "] requires query value");
+        }
+        this.fieldName = fieldName;
+        this.value = value;
+    }
+
+    public SynonymProximityRescorerBuilder(StreamInput in) throws IOException {
+        super(in);
+        fieldName = in.readString();
+        value = in.readGenericValue();
+        analyzer = in.readOptionalString();
+        synonym_type_boost = in.readFloat();
+        slop = in.readVInt();
+        queryWeight = in.readFloat();
+        rescoreQueryWeight = in.readFloat();
+        scoreMode = QueryRescoreMode.readFromStream(in);
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeString(fieldName);
+        out.writeGenericValue(value);
+        out.writeOptionalString(analyzer);
+        out.writeFloat(synonym_type_boost);
+        out.writeVInt(slop);
+        out.writeFloat(queryWeight);
+        out.writeFloat(rescoreQueryWeight);
+        scoreMode.writeTo(out);
+    }
+
+    public String fieldName() {
+        return this.fieldName;
+    }
+
+    public Object value() {
+        return this.value;
+    }
+
+    public SynonymProximityRescorerBuilder analyzer(String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    public String analyzer() {
+        return this.analyzer;
+    }
+
+    public SynonymProximityRescorerBuilder synonym_type_boost(float synonym_type_boost) {
+        this.synonym_type_boost = synonym_type_boost;
+        return this;
+    }
+
+    public float synonym_type_boost() {
+        return this.synonym_type_boost;
+    }
+
+    /** How far apart, in positions, the words may be to still count as close. */
+    public SynonymProximityRescorerBuilder slop(int slop) {
+        if (slop < 0) {
+            throw new IllegalArgumentException("[" + NAME + "] requires slop to be non-negative");
+        }
+        this.slop = slop;
+        return this;
+    }
+
+    public int slop() {
+        return this.slop;
+    }
+
+    public SynonymProximityRescorerBuilder queryWeight(float queryWeight) {
+        this.queryWeight = queryWeight;
+        return this;
+    }
+
+    public float queryWeight() {
+        return this.queryWeight;
+    }
+
+    public SynonymProximityRescorerBuilder rescoreQueryWeight(float rescoreQueryWeight) {
+        this.rescoreQueryWeight = rescoreQueryWeight;
+        return this;
+    }
+
+    public float rescoreQueryWeight() {
+        return this.rescoreQueryWeight;
+    }
+
+    public SynonymProximityRescorerBuilder scoreMode(QueryRescoreMode scoreMode) {
+        this.scoreMode = Objects.requireNonNull(scoreMode);
+        return this;
+    }
+
+    public QueryRescoreMode scoreMode() {
+        return this.scoreMode;
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    public RescorerBuilder<SynonymProximityRescorerBuilder> rewrite(QueryRewriteContext ctx) {
+        return this;
+    }
+
+    @Override
+    protected RescoreContext innerBuildContext(int windowSize, QueryShardContext context) throws IOException {
+        final Query query;
+        try (SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, SynonymMatchServices.of(context))) {
+            if (analyzer != null) {
+                matchQuery.setAnalyzer(analyzer);
+            }
+            matchQuery.setSynonym_type_boost(synonym_type_boost);
+            query = matchQuery.parseProximity(fieldName, value, slop);
+        }
+        // the rescorer of the query rescorer only needs the proximity query
+        QueryRescorer.QueryRescoreContext rescoreContext = new QueryRescorer.QueryRescoreContext(windowSize);
+        rescoreContext.setQuery(query == null ? Queries.newMatchNoDocsQuery("no proximity between less than two positions") : query);
+        rescoreContext.setQueryWeight(queryWeight);
+        rescoreContext.setRescoreQueryWeight(rescoreQueryWeight);
+        rescoreContext.setScoreMode(scoreMode);
+        return rescoreContext;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(FIELD_FIELD.getPreferredName(), fieldName);
+        builder.field(QUERY_FIELD.getPreferredName(), value);
+        if (analyzer != null) {
+            builder.field(SynonymMatchBuilder.ANALYZER_FIELD.getPreferredName(), analyzer);
+        }
+        builder.field(SynonymMatchBuilder.SYNONYM_BOOST_FIELD.getPreferredName(), synonym_type_boost);
+        builder.field(SLOP_FIELD.getPreferredName(), slop);
+        builder.field(QUERY_WEIGHT_FIELD.getPreferredName(), queryWeight);
+        builder.field(RESCORE_QUERY_WEIGHT_FIELD.getPreferredName(), rescoreQueryWeight);
+        builder.field(SCORE_MODE_FIELD.getPreferredName(), scoreMode.name().toLowerCase(Locale.ROOT));
+        builder.endObject();
+    }
+
+    public static SynonymProximityRescorerBuilder fromXContent(XContentParser parser) throws IOException {
+        String fieldName = null;
+        Object value = null;
+        String analyzer = null;
+        float synonym_type_boost = SynonymMatchQuery.DEFAULT_SYNONYM_BOOST;
+        int slop = DEFAULT_SLOP;
+        float queryWeight = 1.0f;
+        float rescoreQueryWeight = 1.0f;
+        QueryRescoreMode scoreMode = QueryRescoreMode.Total;
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    fieldName = parser.text();
+                } else if (QUERY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    value = parser.objectText();
+                } else if (SynonymMatchBuilder.ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    analyzer = parser.text();
+                } else if (SynonymMatchBuilder.SYNONYM_BOOST_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    synonym_type_boost = parser.floatValue();
+                } else if (SLOP_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    slop = parser.intValue();
+                } else if (QUERY_WEIGHT_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    queryWeight = parser.floatValue();
+                } else if (RESCORE_QUERY_WEIGHT_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    rescoreQueryWeight = parser.floatValue();
+                } else if (SCORE_MODE_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    scoreMode = QueryRescoreMode.fromString(parser.text());
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "[" + NAME + "] rescorer does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "[" + NAME + "] unknown token [" + token + "] after [" + currentFieldName + "]");
+            }
+        }
+        if (fieldName == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires field");
+        }
+        if (value == null) {
+            throw new ParsingException(parser.getTokenLocation(), "No text specified for [" + NAME + "]");
+        }
+        SynonymProximityRescorerBuilder rescorer = new SynonymProximityRescorerBuilder(fieldName, value);
+        rescorer.analyzer(analyzer);
+        rescorer.synonym_type_boost(synonym_type_boost);
+        rescorer.slop(slop);
+        rescorer.queryWeight(queryWeight);
+        rescorer.rescoreQueryWeight(rescoreQueryWeight);
+        rescorer.scoreMode(scoreMode);
+        return rescorer;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (super.equals(obj) == false) {
+            return false;
+        }
+        SynonymProximityRescorerBuilder other = (SynonymProximityRescorerBuilder) obj;
+        return Objects.equals(fieldName, other.fieldName) &&
+                Objects.equals(value, other.value) &&
+                Objects.equals(analyzer, other.analyzer) &&
+                synonym_type_boost == other.synonym_type_boost &&
+                slop == other.slop &&
+                queryWeight == other.queryWeight &&
+                rescoreQueryWeight == other.rescoreQueryWeight &&
+                scoreMode == other.scoreMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + Objects.hash(fieldName, value, analyzer, synonym_type_boost, slop,
+                queryWeight, rescoreQueryWeight, scoreMode);
+    }
+}
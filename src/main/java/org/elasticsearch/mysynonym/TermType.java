@@ -1,44 +1,30 @@
 package org.elasticsearch.mysynonym;
 
-import org.apache.lucene.util.BytesRef;
-
 /**
  * @Classname TermType
- * @Description TODO
+ * @Description token type codes kept per term in {@link AnalyzedText}
  * @Date 2021/6/18 18:06
  * @Created by muhao
  */
-public class TermType {
-    String field;
-    String type;
-    BytesRef bytes;
-    public TermType(String fld, String type, BytesRef bytes) {
-        field = fld;
-        this.type = type;
-        this.bytes = bytes == null ? null : BytesRef.deepCopyOf(bytes);
-    }
-
-    public String getField() {
-        return field;
-    }
+public final class TermType {
 
-    public void setField(String field) {
-        this.field = field;
-    }
+    /** the term comes from the query text */
+    public static final int ORIGINAL = 0;
+    /** the term was injected by a synonym filter */
+    public static final int SYNONYM = 1;
 
-    public String getType() {
-        return type;
-    }
+    /** type attribute value set by the synonym token filters */
+    public static final String SYNONYM_TYPE = "SYNONYM";
 
-    public void setType(String type) {
-        this.type = type;
+    private TermType() {
     }
 
-    public BytesRef getBytes() {
-        return bytes;
+    /** Maps a {@link org.apache.lucene.analysis.tokenattributes.TypeAttribute} value to its code. */
+    public static int of(String type) {
+        return SYNONYM_TYPE.equals(type) ? SYNONYM : ORIGINAL;
     }
 
-    public void setBytes(BytesRef bytes) {
-        this.bytes = bytes;
+    public static String toString(int type) {
+        return type == SYNONYM ? "synonym" : "original";
     }
 }
@@ -0,0 +1,93 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestToXContentListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ * <pre>
+ * POST /{index}/_synonym_match/_expand
+ * {
+ *   "field": "content",
+ *   "synonym_analyzer": "match_ana",
+ *   "texts": ["this class", "hello world"],
+ *   "batch_size": 256
+ * }
+ * </pre>
+ */
+public class RestSynonymExpandAction extends BaseRestHandler {
+
+    public static final ParseField FIELD_FIELD = new ParseField("field");
+    public static final ParseField ANALYZER_FIELD = new ParseField("synonym_analyzer");
+    public static final ParseField TEXTS_FIELD = new ParseField("texts");
+    public static final ParseField BATCH_SIZE_FIELD = new ParseField("batch_size");
+
+    public RestSynonymExpandAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/{index}/_synonym_match/_expand", this);
+        controller.registerHandler(POST, "/{index}/_synonym_match/_expand", this);
+    }
+
+    @Override
+    public String getName() {
+        return "synonym_match_expand_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        SynonymExpandRequest expandRequest = new SynonymExpandRequest(request.param("index"));
+        try (XContentParser parser = request.contentOrSourceParamParser()) {
+            parse(parser, expandRequest);
+        }
+        return channel -> client.execute(SynonymExpandAction.INSTANCE, expandRequest, new RestToXContentListener<>(channel));
+    }
+
+    static void parse(XContentParser parser, SynonymExpandRequest request) throws IOException {
+        if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+            throw new IllegalArgumentException("Malformed content, must start with an object");
+        }
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (TEXTS_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                List<String> texts = new ArrayList<>();
+                if (token == XContentParser.Token.START_ARRAY) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        if (token.isValue() == false) {
+                            throw new IllegalArgumentException(currentFieldName + " array element should only contain text");
+                        }
+                        texts.add(parser.text());
+                    }
+                } else if (token.isValue()) {
+                    texts.add(parser.text());
+                } else {
+                    throw new IllegalArgumentException(currentFieldName + " should be text or array of text");
+                }
+                request.texts(texts);
+            } else if (FIELD_FIELD.match(currentFieldName, parser.getDeprecationHandler()) && token.isValue()) {
+                request.field(parser.text());
+            } else if (ANALYZER_FIELD.match(currentFieldName, parser.getDeprecationHandler()) && token.isValue()) {
+                request.analyzer(parser.text());
+            } else if (BATCH_SIZE_FIELD.match(currentFieldName, parser.getDeprecationHandler()) && token.isValue()) {
+                request.batchSize(parser.intValue());
+            } else {
+                throw new IllegalArgumentException("Unknown parameter [" + currentFieldName
+                        + "] in request body or parameter is of the wrong type[" + token + "] ");
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.RestActions;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * <pre>
+ * GET /_nodes/synonym_match/stats
+ * GET /_nodes/{nodeId}/synonym_match/stats
+ * </pre>
+ */
+public class RestSynonymMatchStatsAction extends BaseRestHandler {
+
+    public RestSynonymMatchStatsAction(Settings settings, RestController controller) {
+        super(settings);
+        controller.registerHandler(GET, "/_nodes/synonym_match/stats", this);
+        controller.registerHandler(GET, "/_nodes/{nodeId}/synonym_match/stats", this);
+    }
+
+    @Override
+    public String getName() {
+        return "synonym_match_stats_action";
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        SynonymMatchStatsRequest statsRequest = new SynonymMatchStatsRequest(
+                Strings.splitStringByCommaToArray(request.param("nodeId")));
+        statsRequest.timeout(request.param("timeout"));
+        return channel -> client.execute(SynonymMatchStatsAction.INSTANCE, statsRequest,
+                new RestActions.NodesResponseRestListener<>(channel));
+    }
+}
@@ -0,0 +1,17 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.ActionType;
+
+/**
+ * Expands a batch of query texts into the per position original and synonym terms that
+ * synonym_match builds its query from.
+ */
+public class SynonymExpandAction extends ActionType<SynonymExpandResponse> {
+
+    public static final SynonymExpandAction INSTANCE = new SynonymExpandAction();
+    public static final String NAME = "indices:data/read/synonym_match/expand";
+
+    private SynonymExpandAction() {
+        super(NAME, SynonymExpandResponse::new);
+    }
+}
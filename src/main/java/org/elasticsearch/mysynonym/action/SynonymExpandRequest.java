@@ -0,0 +1,118 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.single.shard.SingleShardRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+public class SynonymExpandRequest extends SingleShardRequest<SynonymExpandRequest> {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int MAX_TEXTS = 10000;
+
+    private String field;
+    private String analyzer;
+    private List<String> texts = new ArrayList<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public SynonymExpandRequest() {
+    }
+
+    public SynonymExpandRequest(String index) {
+        super(index);
+    }
+
+    public SynonymExpandRequest(StreamInput in) throws IOException {
+        super(in);
+        field = in.readString();
+        analyzer = in.readOptionalString();
+        texts = in.readStringList();
+        batchSize = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeOptionalString(analyzer);
+        out.writeStringCollection(texts);
+        out.writeVInt(batchSize);
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public SynonymExpandRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public String analyzer() {
+        return analyzer;
+    }
+
+    /** The analyzer to expand with, like synonym_analyzer. Defaults to the search analyzer of the field. */
+    public SynonymExpandRequest analyzer(String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    public List<String> texts() {
+        return texts;
+    }
+
+    public SynonymExpandRequest texts(List<String> texts) {
+        this.texts = texts;
+        return this;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /** Number of texts expanded by one task on the search thread pool. */
+    public SynonymExpandRequest batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /** Splits the request into requests of at most {@code batchSize} texts. */
+    List<SynonymExpandRequest> split() {
+        List<SynonymExpandRequest> batches = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            SynonymExpandRequest batch = new SynonymExpandRequest(index);
+            batch.field = field;
+            batch.analyzer = analyzer;
+            batch.batchSize = batchSize;
+            batch.texts = new ArrayList<>(texts.subList(from, Math.min(texts.size(), from + batchSize)));
+            batch.setParentTask(getParentTask());
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = validateNonNullIndex();
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (texts == null || texts.isEmpty()) {
+            validationException = addValidationError("texts are missing", validationException);
+        } else if (texts.size() > MAX_TEXTS) {
+            validationException = addValidationError("too many texts [" + texts.size() + "], at most ["
+                    + MAX_TEXTS + "] can be expanded in one request", validationException);
+        }
+        if (batchSize < 1) {
+            validationException = addValidationError("batch_size must be positive", validationException);
+        }
+        return validationException;
+    }
+}
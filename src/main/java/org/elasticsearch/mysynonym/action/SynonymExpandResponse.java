@@ -0,0 +1,100 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.mysynonym.AnalyzedText;
+import org.elasticsearch.mysynonym.TermType;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The expansion of each text of a {@link SynonymExpandRequest}, in request order, with the
+ * index and the analyzer they were expanded with.
+ */
+public class SynonymExpandResponse extends ActionResponse implements ToXContentObject {
+
+    private final String indexUUID;
+    private final String analyzer;
+    private final List<String> texts;
+    private final List<AnalyzedText> expansions;
+
+    public SynonymExpandResponse(String indexUUID, @Nullable String analyzer, List<String> texts, List<AnalyzedText> expansions) {
+        assert texts.size() == expansions.size();
+        this.indexUUID = indexUUID;
+        this.analyzer = analyzer;
+        this.texts = texts;
+        this.expansions = expansions;
+    }
+
+    public SynonymExpandResponse(StreamInput in) throws IOException {
+        super(in);
+        indexUUID = in.readString();
+        analyzer = in.readOptionalString();
+        texts = in.readStringList();
+        expansions = in.readList(AnalyzedText::readFrom);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(indexUUID);
+        out.writeOptionalString(analyzer);
+        out.writeStringCollection(texts);
+        out.writeList(expansions);
+    }
+
+    /** The uuid of the index the texts were expanded on. */
+    public String indexUUID() {
+        return indexUUID;
+    }
+
+    /** The name of the analyzer the texts were expanded with, {@code null} if it has none. */
+    @Nullable
+    public String analyzer() {
+        return analyzer;
+    }
+
+    public List<String> texts() {
+        return texts;
+    }
+
+    public List<AnalyzedText> expansions() {
+        return expansions;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        if (analyzer != null) {
+            builder.field("analyzer", analyzer);
+        }
+        builder.startArray("expansions");
+        for (int i = 0; i < texts.size(); i++) {
+            AnalyzedText expansion = expansions.get(i);
+            builder.startObject();
+            builder.field("text", texts.get(i));
+            builder.startArray("positions");
+            for (int position = 0; position < expansion.positionCount(); position++) {
+                builder.startArray();
+                for (int ord = expansion.positionStart(position); ord < expansion.positionEnd(position); ord++) {
+                    builder.startObject();
+                    builder.field("term", expansion.term(ord).utf8ToString());
+                    builder.field("type", TermType.toString(expansion.type(ord)));
+                    if (expansion.positionLength(ord) != 1) {
+                        builder.field("position_length", expansion.positionLength(ord));
+                    }
+                    builder.endObject();
+                }
+                builder.endArray();
+            }
+            builder.endArray();
+            builder.endObject();
+        }
+        builder.endArray();
+        return builder.endObject();
+    }
+}
@@ -0,0 +1,111 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.mysynonym.SynonymAnalysisCache;
+import org.elasticsearch.mysynonym.SynonymFuzzyAutomatonCache;
+import org.elasticsearch.mysynonym.SynonymMatchStats;
+
+import java.io.IOException;
+
+/**
+ * The synonym_match stats of one node, with the state of its analysis and fuzzy automata caches.
+ */
+public class SynonymMatchNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private SynonymMatchStats.Snapshot stats;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cacheEvictions;
+    private long cacheCount;
+    private long cacheSizeInBytes;
+    private long fuzzyCacheHits;
+    private long fuzzyCacheMisses;
+    private long fuzzyCacheEvictions;
+    private long fuzzyCacheCount;
+    private long fuzzyCacheSizeInBytes;
+
+    SynonymMatchNodeStats() {
+    }
+
+    public SynonymMatchNodeStats(DiscoveryNode node, SynonymMatchStats.Snapshot stats, SynonymAnalysisCache cache,
+                                 SynonymFuzzyAutomatonCache fuzzyCache) {
+        super(node);
+        this.stats = stats;
+        if (cache != null) {
+            cacheHits = cache.hits();
+            cacheMisses = cache.misses();
+            cacheEvictions = cache.evictions();
+            cacheCount = cache.count();
+            cacheSizeInBytes = cache.weight();
+        }
+        if (fuzzyCache != null) {
+            fuzzyCacheHits = fuzzyCache.hits();
+            fuzzyCacheMisses = fuzzyCache.misses();
+            fuzzyCacheEvictions = fuzzyCache.evictions();
+            fuzzyCacheCount = fuzzyCache.count();
+            fuzzyCacheSizeInBytes = fuzzyCache.weight();
+        }
+    }
+
+    public SynonymMatchStats.Snapshot stats() {
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        stats = new SynonymMatchStats.Snapshot(in);
+        cacheHits = in.readVLong();
+        cacheMisses = in.readVLong();
+        cacheEvictions = in.readVLong();
+        cacheCount = in.readVLong();
+        cacheSizeInBytes = in.readVLong();
+        fuzzyCacheHits = in.readVLong();
+        fuzzyCacheMisses = in.readVLong();
+        fuzzyCacheEvictions = in.readVLong();
+        fuzzyCacheCount = in.readVLong();
+        fuzzyCacheSizeInBytes = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        stats.writeTo(out);
+        out.writeVLong(cacheHits);
+        out.writeVLong(cacheMisses);
+        out.writeVLong(cacheEvictions);
+        out.writeVLong(cacheCount);
+        out.writeVLong(cacheSizeInBytes);
+        out.writeVLong(fuzzyCacheHits);
+        out.writeVLong(fuzzyCacheMisses);
+        out.writeVLong(fuzzyCacheEvictions);
+        out.writeVLong(fuzzyCacheCount);
+        out.writeVLong(fuzzyCacheSizeInBytes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        stats.toXContent(builder, params);
+        builder.startObject("analysis_cache");
+        builder.field("hits", cacheHits);
+        builder.field("misses", cacheMisses);
+        builder.field("evictions", cacheEvictions);
+        builder.field("count", cacheCount);
+        builder.field("size_in_bytes", cacheSizeInBytes);
+        builder.endObject();
+        builder.startObject("fuzzy_cache");
+        builder.field("hits", fuzzyCacheHits);
+        builder.field("misses", fuzzyCacheMisses);
+        builder.field("evictions", fuzzyCacheEvictions);
+        builder.field("count", fuzzyCacheCount);
+        builder.field("size_in_bytes", fuzzyCacheSizeInBytes);
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,21 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.StreamableResponseActionType;
+
+/**
+ * Collects the synonym_match stats of the selected nodes.
+ */
+public class SynonymMatchStatsAction extends StreamableResponseActionType<SynonymMatchStatsResponse> {
+
+    public static final SynonymMatchStatsAction INSTANCE = new SynonymMatchStatsAction();
+    public static final String NAME = "cluster:monitor/synonym_match/stats";
+
+    private SynonymMatchStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public SynonymMatchStatsResponse newResponse() {
+        return new SynonymMatchStatsResponse();
+    }
+}
@@ -0,0 +1,14 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+
+public class SynonymMatchStatsRequest extends BaseNodesRequest<SynonymMatchStatsRequest> {
+
+    public SynonymMatchStatsRequest() {
+    }
+
+    /** Stats of the given nodes, all nodes if none is given. */
+    public SynonymMatchStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
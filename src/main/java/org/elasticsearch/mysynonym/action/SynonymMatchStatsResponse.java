@@ -0,0 +1,64 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentFragment;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.mysynonym.SynonymMatchStats;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The stats of each node, and their sum over the nodes under {@code cluster}.
+ */
+public class SynonymMatchStatsResponse extends BaseNodesResponse<SynonymMatchNodeStats> implements ToXContentFragment {
+
+    SynonymMatchStatsResponse() {
+    }
+
+    public SynonymMatchStatsResponse(ClusterName clusterName, List<SynonymMatchNodeStats> nodes,
+                                     List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<SynonymMatchNodeStats> readNodesFrom(StreamInput in) throws IOException {
+        return in.readList(input -> {
+            SynonymMatchNodeStats nodeStats = new SynonymMatchNodeStats();
+            nodeStats.readFrom(input);
+            return nodeStats;
+        });
+    }
+
+    @Override
+    protected void writeNodesTo(StreamOutput out, List<SynonymMatchNodeStats> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    public SynonymMatchStats.Snapshot total() {
+        SynonymMatchStats.Snapshot total = SynonymMatchStats.Snapshot.empty();
+        for (SynonymMatchNodeStats node : getNodes()) {
+            total = total.add(node.stats());
+        }
+        return total;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("cluster");
+        total().toXContent(builder, params);
+        builder.endObject();
+        builder.startObject("nodes");
+        for (SynonymMatchNodeStats node : getNodes()) {
+            builder.startObject(node.getNode().getId());
+            node.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
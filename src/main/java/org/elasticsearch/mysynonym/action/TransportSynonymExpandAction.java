@@ -0,0 +1,128 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.single.shard.TransportSingleShardAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.ShardsIterator;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.mysynonym.AnalyzedText;
+import org.elasticsearch.mysynonym.SynonymMatchQuery;
+import org.elasticsearch.mysynonym.SynonymMatchServices;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Expands the texts with the analyzers of the index, on a node that holds a copy of it.
+ *
+ * A request with more than {@code batch_size} texts is split into batches that are sent
+ * as separate requests, each to a random copy of the index, and run in parallel on the
+ * search thread pool of their node.
+ */
+public class TransportSynonymExpandAction extends TransportSingleShardAction<SynonymExpandRequest, SynonymExpandResponse> {
+
+    private final IndicesService indicesService;
+
+    private final SynonymMatchServices services;
+
+    @Inject
+    public TransportSynonymExpandAction(ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
+                                        ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                        IndicesService indicesService, SynonymMatchServices services) {
+        super(SynonymExpandAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, SynonymExpandRequest::new, ThreadPool.Names.SEARCH);
+        this.indicesService = indicesService;
+        this.services = services;
+    }
+
+    @Override
+    protected void doExecute(Task task, SynonymExpandRequest request, ActionListener<SynonymExpandResponse> listener) {
+        if (request.texts().size() <= request.batchSize()) {
+            super.doExecute(task, request, listener);
+            return;
+        }
+        final List<SynonymExpandRequest> batches = request.split();
+        final AtomicReferenceArray<SynonymExpandResponse> responses = new AtomicReferenceArray<>(batches.size());
+        final CountDown countDown = new CountDown(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            final int batch = i;
+            super.doExecute(task, batches.get(i), new ActionListener<SynonymExpandResponse>() {
+                @Override
+                public void onResponse(SynonymExpandResponse response) {
+                    responses.set(batch, response);
+                    if (countDown.countDown()) {
+                        listener.onResponse(merge(request, responses));
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // the first failure fails the whole request
+                    if (countDown.fastForward()) {
+                        listener.onFailure(e);
+                    }
+                }
+            });
+        }
+    }
+
+    private static SynonymExpandResponse merge(SynonymExpandRequest request, AtomicReferenceArray<SynonymExpandResponse> responses) {
+        List<AnalyzedText> expansions = new ArrayList<>(request.texts().size());
+        for (int i = 0; i < responses.length(); i++) {
+            expansions.addAll(responses.get(i).expansions());
+        }
+        // every batch ran on a copy of the same index, with the analyzer of its mapping
+        final SynonymExpandResponse first = responses.get(0);
+        return new SynonymExpandResponse(first.indexUUID(), first.analyzer(), request.texts(), expansions);
+    }
+
+    @Override
+    protected SynonymExpandResponse shardOperation(SynonymExpandRequest request, ShardId shardId) {
+        final IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
+        final QueryShardContext context = indexService.newQueryShardContext(shardId.id(), null,
+                () -> {
+                    throw new UnsupportedOperationException("expanding synonyms does not use now");
+                }, null);
+        final List<AnalyzedText> expansions = new ArrayList<>(request.texts().size());
+        final String analyzer;
+        try (SynonymMatchQuery matchQuery = new SynonymMatchQuery(context, services)) {
+            if (request.analyzer() != null) {
+                matchQuery.setAnalyzer(request.analyzer());
+            }
+            for (String text : request.texts()) {
+                expansions.add(matchQuery.expand(request.field(), text));
+            }
+            analyzer = matchQuery.analyzerName(request.field());
+        }
+        return new SynonymExpandResponse(shardId.getIndex().getUUID(), analyzer, request.texts(), expansions);
+    }
+
+    @Override
+    protected Writeable.Reader<SynonymExpandResponse> getResponseReader() {
+        return SynonymExpandResponse::new;
+    }
+
+    @Override
+    protected boolean resolveIndex(SynonymExpandRequest request) {
+        return true;
+    }
+
+    @Override
+    protected ShardsIterator shards(ClusterState state, InternalRequest request) {
+        // any copy has the analyzers, spread the batches over all of them
+        return state.routingTable().index(request.concreteIndex()).randomAllActiveShardsIt();
+    }
+}
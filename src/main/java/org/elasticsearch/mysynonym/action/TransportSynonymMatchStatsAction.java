@@ -0,0 +1,53 @@
+package org.elasticsearch.mysynonym.action;
+
+import org.elasticsearch.action.FailedNodeException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.mysynonym.SynonymMatchServices;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.List;
+
+public class TransportSynonymMatchStatsAction extends TransportNodesAction<SynonymMatchStatsRequest, SynonymMatchStatsResponse,
+        TransportSynonymMatchStatsAction.NodeRequest, SynonymMatchNodeStats> {
+
+    private final SynonymMatchServices services;
+
+    @Inject
+    public TransportSynonymMatchStatsAction(ThreadPool threadPool, ClusterService clusterService,
+                                            TransportService transportService, ActionFilters actionFilters,
+                                            SynonymMatchServices services) {
+        super(SynonymMatchStatsAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                SynonymMatchStatsRequest::new, NodeRequest::new, ThreadPool.Names.MANAGEMENT, SynonymMatchNodeStats.class);
+        this.services = services;
+    }
+
+    @Override
+    protected SynonymMatchStatsResponse newResponse(SynonymMatchStatsRequest request, List<SynonymMatchNodeStats> responses,
+                                                    List<FailedNodeException> failures) {
+        return new SynonymMatchStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(SynonymMatchStatsRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected SynonymMatchNodeStats newNodeResponse() {
+        return new SynonymMatchNodeStats();
+    }
+
+    @Override
+    protected SynonymMatchNodeStats nodeOperation(NodeRequest request) {
+        return new SynonymMatchNodeStats(clusterService.localNode(), services.stats().snapshot(),
+                services.analysisCache(), services.fuzzyCache());
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+    }
+}
@@ -14,21 +14,191 @@
 
 package org.elasticsearch.plugin;
 
+import org.apache.lucene.util.SetOnce;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.component.LifecycleComponent;
+import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexModule;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.analysis.TokenFilterFactory;
+import org.elasticsearch.index.shard.IndexEventListener;
+import org.elasticsearch.indices.analysis.AnalysisModule.AnalysisProvider;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
+import org.elasticsearch.mysynonym.SynonymAnalysisCache;
+import org.elasticsearch.mysynonym.SynonymDictionaryRegistry;
+import org.elasticsearch.mysynonym.SynonymDictionaryTokenFilterFactory;
+import org.elasticsearch.mysynonym.SynonymFuzzyAutomatonCache;
+import org.elasticsearch.mysynonym.SynonymMarkerTokenFilterFactory;
+import org.elasticsearch.mysynonym.SynonymMatchBreakerService;
 import org.elasticsearch.mysynonym.SynonymMatchBuilder;
+import org.elasticsearch.mysynonym.SynonymMatchQuery;
+import org.elasticsearch.mysynonym.SynonymMatchServices;
+import org.elasticsearch.mysynonym.SynonymMatchSlowLog;
+import org.elasticsearch.mysynonym.SynonymMatchStats;
+import org.elasticsearch.mysynonym.SynonymMatchWarmer;
+import org.elasticsearch.mysynonym.SynonymMultiMatchBuilder;
+import org.elasticsearch.mysynonym.SynonymProximityRescorerBuilder;
+import org.elasticsearch.mysynonym.action.RestSynonymExpandAction;
+import org.elasticsearch.mysynonym.action.RestSynonymMatchStatsAction;
+import org.elasticsearch.mysynonym.action.SynonymExpandAction;
+import org.elasticsearch.mysynonym.action.SynonymMatchStatsAction;
+import org.elasticsearch.mysynonym.action.TransportSynonymExpandAction;
+import org.elasticsearch.mysynonym.action.TransportSynonymMatchStatsAction;
+import org.elasticsearch.plugins.ActionPlugin;
+import org.elasticsearch.plugins.AnalysisPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.plugins.SearchPlugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
-public class ESQueryPlugin extends Plugin implements SearchPlugin {
+import static org.elasticsearch.plugins.AnalysisPlugin.requiresAnalysisSettings;
+
+public class ESQueryPlugin extends Plugin implements SearchPlugin, AnalysisPlugin, ActionPlugin {
+
+    private final SynonymDictionaryRegistry dictionaryRegistry = new SynonymDictionaryRegistry();
+
+    // created with the components, a transport client has none
+    private final SetOnce<SynonymMatchServices> services = new SetOnce<>();
+
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry, Environment environment,
+                                               NodeEnvironment nodeEnvironment, NamedWriteableRegistry namedWriteableRegistry) {
+        dictionaryRegistry.setResourceWatcherService(resourceWatcherService);
+        final Settings settings = environment.settings();
+        services.set(new SynonymMatchServices(new SynonymMatchStats(), new SynonymAnalysisCache(settings),
+                new SynonymFuzzyAutomatonCache(settings)));
+        // bound by the injector for the transport actions
+        return Collections.singletonList(services.get());
+    }
+
+    private SynonymMatchServices services() {
+        return SynonymMatchServices.orNone(services.get());
+    }
+
+    @Override
+    public Collection<Class<? extends LifecycleComponent>> getGuiceServiceClasses() {
+        // the request circuit breaker is only available by injection
+        return Collections.singletonList(SynonymMatchBreakerService.class);
+    }
+
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Arrays.asList(
+                SynonymAnalysisCache.CACHE_SIZE_SETTING,
+                SynonymAnalysisCache.MAX_TEXT_LENGTH_SETTING,
+                SynonymFuzzyAutomatonCache.CACHE_SIZE_SETTING,
+                SynonymMatchSlowLog.THRESHOLD_SETTING,
+                SynonymMatchQuery.MAX_EXPANDED_TERMS_SETTING,
+                SynonymMatchWarmer.ANALYZERS_SETTING,
+                SynonymMatchWarmer.QUERIES_SETTING,
+                SynonymMatchWarmer.FIELD_SETTING
+                );
+    }
+
+    @Override
+    public void onIndexModule(IndexModule indexModule) {
+        indexModule.addIndexEventListener(new IndexEventListener() {
+            @Override
+            public void afterIndexCreated(IndexService indexService) {
+                // builders look the node up by the index of the shard they build a query for
+                SynonymMatchServices.register(indexService, services());
+            }
+
+            @Override
+            public void beforeIndexRemoved(IndexService indexService, IndexRemovalReason reason) {
+                SynonymMatchServices.unregister(indexService);
+            }
+
+            @Override
+            public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
+                // the analyzers of a closed or deleted index are never used again
+                SynonymAnalysisCache analysisCache = services().analysisCache();
+                if (analysisCache != null) {
+                    analysisCache.invalidate(index);
+                }
+                dictionaryRegistry.release(index);
+            }
+        });
+        indexModule.addIndexEventListener(new SynonymMatchWarmer(services()));
+    }
+
+    @Override
+    public Map<String, AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
+        Map<String, AnalysisProvider<TokenFilterFactory>> tokenFilters = new HashMap<>();
+        tokenFilters.put(SynonymDictionaryTokenFilterFactory.NAME, requiresAnalysisSettings(
+                (indexSettings, environment, name, settings) ->
+                        new SynonymDictionaryTokenFilterFactory(indexSettings, environment, name, settings, dictionaryRegistry)));
+        tokenFilters.put(SynonymMarkerTokenFilterFactory.NAME,
+                (indexSettings, environment, name, settings) -> new SynonymMarkerTokenFilterFactory(indexSettings, name, settings));
+        return tokenFilters;
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Arrays.asList(
+                new ActionHandler<>(SynonymExpandAction.INSTANCE, TransportSynonymExpandAction.class),
+                new ActionHandler<>(SynonymMatchStatsAction.INSTANCE, TransportSynonymMatchStatsAction.class)
+                );
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(Settings settings, RestController restController, ClusterSettings clusterSettings,
+                                             IndexScopedSettings indexScopedSettings, SettingsFilter settingsFilter,
+                                             IndexNameExpressionResolver indexNameExpressionResolver,
+                                             Supplier<DiscoveryNodes> nodesInCluster) {
+        return Arrays.asList(
+                new RestSynonymExpandAction(settings, restController),
+                new RestSynonymMatchStatsAction(settings, restController)
+                );
+    }
 
     @Override
     public List<QuerySpec<?>> getQueries() {
 //        return singletonList(new QuerySpec<>(PositionMatchQuery.NAME, PositionMatchQueryBuilder::new, PositionMatchQueryBuilder::fromXContent));
         return Arrays.asList(
-                new QuerySpec<>(SynonymMatchBuilder.NAME, SynonymMatchBuilder::new, SynonymMatchBuilder::fromXContent)
+                new QuerySpec<>(SynonymMatchBuilder.NAME, SynonymMatchBuilder::new, SynonymMatchBuilder::fromXContent),
+                new QuerySpec<>(SynonymMultiMatchBuilder.NAME, SynonymMultiMatchBuilder::new, SynonymMultiMatchBuilder::fromXContent)
                 );
     }
 
+    @Override
+    public List<RescorerSpec<?>> getRescorers() {
+        return Collections.singletonList(new RescorerSpec<>(SynonymProximityRescorerBuilder.NAME,
+                SynonymProximityRescorerBuilder::new, SynonymProximityRescorerBuilder::fromXContent));
+    }
+
+    @Override
+    public void close() throws IOException {
+        dictionaryRegistry.close();
+    }
+
 }
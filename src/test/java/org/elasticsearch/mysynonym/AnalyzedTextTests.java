@@ -0,0 +1,117 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.mysynonym.action.SynonymExpandResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The wire format of the terms resolved by pre_analyze_index: a dictionary of the distinct
+ * terms, then the positions as packed dictionary ordinals, types and position lengths.
+ */
+public class AnalyzedTextTests extends LuceneTestCase {
+
+    public void testEmptyRoundTrip() throws IOException {
+        assertRoundTrip(AnalyzedText.EMPTY);
+        assertRoundTrip(new AnalyzedText.Builder().startPosition().build());
+    }
+
+    public void testRoundTrip() throws IOException {
+        AnalyzedText text = new AnalyzedText.Builder()
+                .startPosition()
+                .addTerm(new BytesRef("statue"), TermType.ORIGINAL)
+                .addTerm(new BytesRef("lady"), TermType.SYNONYM, 2)
+                .startPosition()
+                .addTerm(new BytesRef("of"), TermType.ORIGINAL)
+                .startPosition()
+                .addTerm(new BytesRef("liberty"), TermType.ORIGINAL)
+                .addTerm(new BytesRef("liberty"), TermType.SYNONYM)
+                .startPosition()
+                .addTerm(new BytesRef("statue"), TermType.ORIGINAL)
+                .build();
+        AnalyzedText read = assertRoundTrip(text);
+        assertTrue(read.hasGraph());
+        assertEquals(2, read.positionLength(1));
+        assertEquals(TermType.SYNONYM, read.type(4));
+        assertEquals(1, read.positionLength(5));
+    }
+
+    public void testRandomRoundTrip() throws IOException {
+        for (int iter = 0; iter < 100; iter++) {
+            final List<BytesRef> vocabulary = new ArrayList<>();
+            for (int i = 1 + random().nextInt(20); i > 0; i--) {
+                vocabulary.add(new BytesRef(TestUtil.randomUnicodeString(random(), 10)));
+            }
+            final boolean graph = random().nextBoolean();
+            final int positions = random().nextInt(30);
+            AnalyzedText.Builder builder = new AnalyzedText.Builder();
+            for (int position = 0; position < positions; position++) {
+                builder.startPosition();
+                for (int i = random().nextInt(5); i > 0; i--) {
+                    final int positionLength = graph && random().nextInt(4) == 0 ? 2 + random().nextInt(200) : 1;
+                    builder.addTerm(vocabulary.get(random().nextInt(vocabulary.size())),
+                            random().nextBoolean() ? TermType.ORIGINAL : TermType.SYNONYM, positionLength);
+                }
+            }
+            assertRoundTrip(builder.build());
+        }
+    }
+
+    public void testExpandResponseRoundTrip() throws IOException {
+        AnalyzedText text = new AnalyzedText.Builder()
+                .startPosition()
+                .addTerm(new BytesRef("fast"), TermType.ORIGINAL)
+                .addTerm(new BytesRef("quick"), TermType.SYNONYM)
+                .build();
+        for (String analyzer : Arrays.asList("match_ana", null)) {
+            SynonymExpandResponse response = new SynonymExpandResponse("uuid", analyzer,
+                    Arrays.asList("fast", ""), Arrays.asList(text, AnalyzedText.EMPTY));
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                response.writeTo(out);
+                try (StreamInput in = out.bytes().streamInput()) {
+                    SynonymExpandResponse read = new SynonymExpandResponse(in);
+                    assertEquals("uuid", read.indexUUID());
+                    assertEquals(analyzer, read.analyzer());
+                    assertEquals(response.texts(), read.texts());
+                    assertEquals(response.expansions(), read.expansions());
+                    assertEquals(-1, in.read());
+                }
+            }
+        }
+    }
+
+    private static AnalyzedText assertRoundTrip(AnalyzedText text) throws IOException {
+        final BytesReference bytes = bytes(text);
+        final AnalyzedText read;
+        try (StreamInput in = bytes.streamInput()) {
+            read = AnalyzedText.readFrom(in);
+            assertEquals(-1, in.read());
+        }
+        assertEquals(text, read);
+        assertEquals(text.hashCode(), read.hashCode());
+        assertEquals(text.hasGraph(), read.hasGraph());
+        assertEquals(text.positionCount(), read.positionCount());
+        for (int ord = 0; ord < text.termCount(); ord++) {
+            assertEquals(text.term(ord), read.term(ord));
+            assertEquals(text.type(ord), read.type(ord));
+            assertEquals(text.positionLength(ord), read.positionLength(ord));
+        }
+        assertEquals(bytes, bytes(read));
+        return read;
+    }
+
+    private static BytesReference bytes(AnalyzedText text) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            text.writeTo(out);
+            return out.bytes();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.elasticsearch.index.Index;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+
+public class SynonymDictionaryRegistryTests extends LuceneTestCase {
+
+    public void testReload() throws Exception {
+        final Path path = write("fast, quick");
+        try (SynonymDictionaryRegistry registry = new SynonymDictionaryRegistry()) {
+            SynonymDictionaryRegistry.Entry entry = registry.acquire(path, new Index("test", "_na_"));
+            SynonymDictionary first = entry.acquire();
+            assertTrue(entry.reload());
+            assertEquals(1, entry.generation());
+            // the previous version stays open until its last reader releases it
+            assertNotNull(first.map());
+            first.decRef();
+            entry.acquire().decRef();
+        }
+    }
+
+    public void testReloadAfterClose() throws Exception {
+        final Path path = write("fast, quick");
+        try (SynonymDictionaryRegistry registry = new SynonymDictionaryRegistry()) {
+            final Index index = new Index("test", "_na_");
+            SynonymDictionaryRegistry.Entry entry = registry.acquire(path, index);
+            registry.release(index);
+            assertEquals(0, registry.count());
+            // a check of the watcher that was already running when the entry was closed
+            assertFalse(entry.reload());
+            assertEquals(0, entry.generation());
+            expectThrows(IllegalStateException.class, entry::acquire);
+        }
+    }
+
+    private Path write(String rules) throws Exception {
+        final Path path = createTempDir().resolve("synonyms.fst");
+        SynonymDictionary.write(SynonymDictionaryCompiler.compile(new StringReader(rules), false, true), path);
+        return path;
+    }
+}
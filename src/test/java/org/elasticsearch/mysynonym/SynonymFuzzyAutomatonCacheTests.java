@@ -0,0 +1,37 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Locale;
+
+/**
+ * The fuzzy automaton cache is bounded by the memory of the automata, not by the number of terms.
+ */
+public class SynonymFuzzyAutomatonCacheTests extends LuceneTestCase {
+
+    public void testWeightGrowsWithEditsAndLength() {
+        final long oneEdit = SynonymFuzzyAutomatonCache.ramBytesUsed(SynonymFuzzyQuery.compile(new BytesRef("liberty"), 1, 0, true));
+        final long twoEdits = SynonymFuzzyAutomatonCache.ramBytesUsed(SynonymFuzzyQuery.compile(new BytesRef("liberty"), 2, 0, true));
+        final long longer = SynonymFuzzyAutomatonCache.ramBytesUsed(
+                SynonymFuzzyQuery.compile(new BytesRef("internationalization"), 2, 0, true));
+        assertTrue(oneEdit + " < " + twoEdits, oneEdit < twoEdits);
+        assertTrue(twoEdits + " < " + longer, twoEdits < longer);
+    }
+
+    public void testBoundedByMemory() {
+        final long entry = SynonymFuzzyAutomatonCache.ramBytesUsed(SynonymFuzzyQuery.compile(new BytesRef("term00"), 2, 0, true));
+        SynonymFuzzyAutomatonCache cache = new SynonymFuzzyAutomatonCache(Settings.builder()
+                .put(SynonymFuzzyAutomatonCache.CACHE_SIZE_SETTING.getKey(), (10 * entry) + "b")
+                .build());
+        for (int i = 0; i < 100; i++) {
+            cache.getOrCompile(new BytesRef(String.format(Locale.ROOT, "term%02d", i)), 2, 0, true);
+        }
+        assertTrue(cache.weight() + " <= " + 10 * entry, cache.weight() <= 10 * entry);
+        assertTrue(cache.count() < 100);
+        assertTrue(cache.evictions() > 0);
+
+        assertSame(cache.getOrCompile(new BytesRef("term99"), 2, 0, true), cache.getOrCompile(new BytesRef("term99"), 2, 0, true));
+    }
+}
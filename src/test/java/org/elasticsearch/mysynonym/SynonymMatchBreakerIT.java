@@ -0,0 +1,124 @@
+package org.elasticsearch.mysynonym;
+
+import org.elasticsearch.action.admin.indices.validate.query.ValidateQueryResponse;
+import org.elasticsearch.action.explain.ExplainResponse;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.plugin.ESQueryPlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * The request breaker is given back what synonym_match charged once its query is built,
+ * also by the APIs that build a query without running a search. Queries of the Java API
+ * are charged on local shards too.
+ */
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.SUITE, numDataNodes = 2, numClientNodes = 0,
+        supportsDedicatedMasters = false)
+public class SynonymMatchBreakerIT extends ESIntegTestCase {
+
+    private static final String INDEX = "synonym_match_breaker";
+    private static final String FIELD = "content";
+    private static final String ANALYZER = "match_ana";
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Collections.singletonList(ESQueryPlugin.class);
+    }
+
+    private void createIndex() throws Exception {
+        final Path dictionary = createTempDir().resolve("breaker_synonyms.fst");
+        SynonymDictionary.write(SynonymDictionaryCompiler.compile(
+                new StringReader("quick, fast, speedy\nfox, vixen\nstatue of liberty, lady liberty"), false, true), dictionary);
+        assertAcked(prepareCreate(INDEX)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", 2)
+                        .put("index.number_of_replicas", 0)
+                        .put("analysis.filter.breaker_synonym.type", SynonymDictionaryTokenFilterFactory.NAME)
+                        .put("analysis.filter.breaker_synonym.dictionary_path", dictionary.toString())
+                        .put("analysis.analyzer." + ANALYZER + ".type", "custom")
+                        .put("analysis.analyzer." + ANALYZER + ".tokenizer", "standard")
+                        .putList("analysis.analyzer." + ANALYZER + ".filter", Collections.singletonList("breaker_synonym")))
+                .addMapping("_doc", FIELD, "type=text,analyzer=standard"));
+        ensureGreen(INDEX);
+        client().prepareIndex(INDEX, "_doc", "1").setSource(FIELD, "the quick brown fox").get();
+        client().prepareIndex(INDEX, "_doc", "2").setSource(FIELD, "a speedy vixen near lady liberty").get();
+        refresh(INDEX);
+    }
+
+    public void testSearchReleasesBreaker() throws Exception {
+        createIndex();
+        assertHitCount(client().prepareSearch(INDEX).setQuery(query("fast fox")).get(), 2);
+        assertBreakerReleased();
+    }
+
+    public void testExplainReleasesBreaker() throws Exception {
+        createIndex();
+        for (int i = 0; i < 10; i++) {
+            ExplainResponse response = client().prepareExplain(INDEX, "_doc", "1").setQuery(query("fast fox")).get();
+            assertTrue(response.isMatch());
+        }
+        assertBreakerReleased();
+    }
+
+    public void testValidateReleasesBreaker() throws Exception {
+        createIndex();
+        for (int i = 0; i < 10; i++) {
+            ValidateQueryResponse response = client().admin().indices().prepareValidateQuery(INDEX)
+                    .setQuery(query("statue of liberty fox"))
+                    .setExplain(true)
+                    .get();
+            assertTrue(response.isValid());
+        }
+        assertBreakerReleased();
+    }
+
+    public void testJavaApiQueryUsesNodeServices() throws Exception {
+        createIndex();
+        // not serialized for local shards, the query still finds the services of the node
+        assertAcked(client().admin().cluster().prepareUpdateSettings()
+                .setTransientSettings(Settings.builder().put("indices.breaker.request.limit", "100b")));
+        try {
+            SearchPhaseExecutionException e = expectThrows(SearchPhaseExecutionException.class,
+                    () -> client().prepareSearch(INDEX).setQuery(query("fast fox")).get());
+            assertThat(ExceptionsHelper.unwrap(e, CircuitBreakingException.class), notNullValue());
+        } finally {
+            assertAcked(client().admin().cluster().prepareUpdateSettings()
+                    .setTransientSettings(Settings.builder().putNull("indices.breaker.request.limit")));
+        }
+        assertBreakerReleased();
+
+        assertHitCount(client().prepareSearch(INDEX).setQuery(query("fast fox")).get(), 2);
+        long queries = 0;
+        for (SynonymMatchServices services : internalCluster().getInstances(SynonymMatchServices.class)) {
+            queries += services.stats().snapshot().queries();
+        }
+        assertThat(queries, greaterThan(0L));
+    }
+
+    private static SynonymMatchBuilder query(String text) {
+        return new SynonymMatchBuilder(FIELD, text).analyzer(ANALYZER);
+    }
+
+    private void assertBreakerReleased() throws Exception {
+        assertBusy(() -> {
+            for (CircuitBreakerService breakerService : internalCluster().getInstances(CircuitBreakerService.class)) {
+                assertEquals(0, breakerService.getBreaker(CircuitBreaker.REQUEST).getUsed());
+            }
+        });
+    }
+}
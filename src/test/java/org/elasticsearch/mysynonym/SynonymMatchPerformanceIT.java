@@ -0,0 +1,264 @@
+package org.elasticsearch.mysynonym;
+
+import com.carrotsearch.randomizedtesting.annotations.TimeoutSuite;
+import org.apache.lucene.util.TimeUnits;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.plugin.ESQueryPlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+
+/**
+ * Load and latency regression of synonym_match against the match query it replaces.
+ *
+ * A generated corpus is indexed into a plugin-loaded in-process cluster, then the same mixed
+ * workload (short, medium and long texts with a varying synonym density) is replayed
+ * concurrently through {@code match} with the synonym analyzer and through
+ * {@code synonym_match}. QPS and p50 / p99 latencies of both are logged, the suite fails
+ * when synonym_match is slower than match by more than the budget.
+ *
+ * Run with {@code mvn -P perf-it test}, sizes and budgets are the
+ * {@code tests.synonym_match.*} system properties of the profile.
+ */
+@TimeoutSuite(millis = 4 * TimeUnits.HOUR)
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.SUITE, numDataNodes = 2, numClientNodes = 0,
+        supportsDedicatedMasters = false)
+public class SynonymMatchPerformanceIT extends ESIntegTestCase {
+
+    private static final String INDEX = "synonym_match_perf";
+    private static final String FIELD = "content";
+    private static final String ANALYZER = "match_ana";
+
+    private static final int VOCABULARY = 20000;
+    // words [0, SYNONYM_GROUPS * 2) have a synonym: w(2i) <=> w(2i+1)
+    private static final int SYNONYM_GROUPS = 2000;
+    private static final int BULK_SIZE = 5000;
+    private static final int QUERIES = 2000;
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    private static final int DOCS = Integer.getInteger("tests.synonym_match.docs", 2000000);
+    private static final int THREADS = Integer.getInteger("tests.synonym_match.threads", 4);
+    private static final double MAX_LATENCY_RATIO =
+            Double.parseDouble(System.getProperty("tests.synonym_match.max_latency_ratio", "2.0"));
+    private static final double MIN_QPS_RATIO =
+            Double.parseDouble(System.getProperty("tests.synonym_match.min_qps_ratio", "0.5"));
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Collections.singletonList(ESQueryPlugin.class);
+    }
+
+    @Override
+    protected boolean addMockInternalEngine() {
+        // asserting searchers would dominate the latencies
+        return false;
+    }
+
+    public void testSynonymMatchAgainstMatch() throws Exception {
+        final Random random = new Random(random().nextLong());
+        createCorpus(random);
+        final List<String> workload = workload(random);
+
+        final Stats match = replay(workload, text -> QueryBuilders.matchQuery(FIELD, text).analyzer(ANALYZER));
+        final Stats synonymMatch = replay(workload, text -> new SynonymMatchBuilder(FIELD, text).analyzer(ANALYZER));
+        logger.info("docs [{}], threads [{}], queries [{}]", DOCS, THREADS, workload.size() * MEASURED_ROUNDS);
+        logger.info("match         {}", match);
+        logger.info("synonym_match {}", synonymMatch);
+
+        assertTrue("synonym_match p50 [" + synonymMatch.p50Millis() + "ms] exceeds " + MAX_LATENCY_RATIO
+                        + "x match p50 [" + match.p50Millis() + "ms]",
+                synonymMatch.p50Nanos <= match.p50Nanos * MAX_LATENCY_RATIO);
+        assertTrue("synonym_match p99 [" + synonymMatch.p99Millis() + "ms] exceeds " + MAX_LATENCY_RATIO
+                        + "x match p99 [" + match.p99Millis() + "ms]",
+                synonymMatch.p99Nanos <= match.p99Nanos * MAX_LATENCY_RATIO);
+        assertTrue("synonym_match qps [" + synonymMatch.qps + "] is below " + MIN_QPS_RATIO
+                        + "x match qps [" + match.qps + "]",
+                synonymMatch.qps >= match.qps * MIN_QPS_RATIO);
+    }
+
+    private void createCorpus(Random random) throws Exception {
+        final List<String> synonyms = new ArrayList<>(SYNONYM_GROUPS);
+        for (int i = 0; i < SYNONYM_GROUPS; i++) {
+            synonyms.add(word(2 * i) + ", " + word(2 * i + 1));
+        }
+        // the synonym filter of the analysis-common module is not available to the embedded nodes
+        final Path dictionary = createTempDir().resolve("perf_synonyms.fst");
+        SynonymDictionary.write(SynonymDictionaryCompiler.compile(new StringReader(String.join("\n", synonyms)), false, true),
+                dictionary);
+        assertAcked(prepareCreate(INDEX)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", 2)
+                        .put("index.number_of_replicas", 0)
+                        .put("index.refresh_interval", -1)
+                        .put("analysis.filter.perf_synonym.type", SynonymDictionaryTokenFilterFactory.NAME)
+                        .put("analysis.filter.perf_synonym.dictionary_path", dictionary.toString())
+                        .put("analysis.analyzer." + ANALYZER + ".type", "custom")
+                        .put("analysis.analyzer." + ANALYZER + ".tokenizer", "standard")
+                        .putList("analysis.analyzer." + ANALYZER + ".filter", Collections.singletonList("perf_synonym")))
+                .addMapping("_doc", FIELD, "type=text,analyzer=standard"));
+        ensureGreen(INDEX);
+
+        for (int start = 0; start < DOCS; start += BULK_SIZE) {
+            BulkRequestBuilder bulk = client().prepareBulk();
+            for (int doc = start; doc < Math.min(DOCS, start + BULK_SIZE); doc++) {
+                bulk.add(client().prepareIndex(INDEX, "_doc", Integer.toString(doc))
+                        .setSource(XContentType.JSON, FIELD, text(random, 20 + random.nextInt(30))));
+            }
+            BulkResponse response = bulk.get();
+            assertFalse(response.buildFailureMessage(), response.hasFailures());
+        }
+        refresh(INDEX);
+        client().admin().indices().prepareForceMerge(INDEX).setMaxNumSegments(1).get();
+        refresh(INDEX);
+    }
+
+    /** Short, medium and long texts, more or less of their words have synonyms. */
+    private static List<String> workload(Random random) {
+        final List<String> workload = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            final int length;
+            switch (i % 3) {
+                case 0:
+                    length = 1 + random.nextInt(2);
+                    break;
+                case 1:
+                    length = 3 + random.nextInt(3);
+                    break;
+                default:
+                    length = 10 + random.nextInt(11);
+                    break;
+            }
+            final double synonymDensity = random.nextDouble();
+            final StringBuilder text = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                if (j > 0) {
+                    text.append(' ');
+                }
+                text.append(random.nextDouble() < synonymDensity
+                        ? word(random.nextInt(SYNONYM_GROUPS * 2))
+                        : word(zipf(random)));
+            }
+            workload.add(text.toString());
+        }
+        return workload;
+    }
+
+    private Stats replay(List<String> workload, Function<String, QueryBuilder> query) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(workload, query);
+        }
+        final long[] latencies = new long[workload.size() * MEASURED_ROUNDS];
+        final long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long[] roundLatencies = run(workload, query);
+            System.arraycopy(roundLatencies, 0, latencies, round * workload.size(), roundLatencies.length);
+        }
+        final long took = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Stats(latencies.length * TimeUnit.SECONDS.toNanos(1) / (double) took,
+                percentile(latencies, 0.5), percentile(latencies, 0.99));
+    }
+
+    /** Runs every text of the workload once, spread over the threads, and returns the latencies. */
+    private long[] run(List<String> workload, Function<String, QueryBuilder> query) throws Exception {
+        final long[] latencies = new long[workload.size()];
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int first = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < workload.size(); i += THREADS) {
+                        final long start = System.nanoTime();
+                        SearchResponse response = client().prepareSearch(INDEX)
+                                .setQuery(query.apply(workload.get(i)))
+                                .setSize(10)
+                                .get();
+                        latencies[i] = System.nanoTime() - start;
+                        assertNoFailures(response);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        return sorted[Math.max(0, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+
+    private static String text(Random random, int length) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(word(zipf(random)));
+        }
+        return text.toString();
+    }
+
+    /** Word rank with a roughly zipfian distribution, like natural text. */
+    private static int zipf(Random random) {
+        return (int) Math.min(VOCABULARY - 1, Math.floor(Math.pow(VOCABULARY, random.nextDouble())) - 1);
+    }
+
+    private static String word(int rank) {
+        return "w" + rank;
+    }
+
+    private static final class Stats {
+        final double qps;
+        final long p50Nanos;
+        final long p99Nanos;
+
+        Stats(double qps, long p50Nanos, long p99Nanos) {
+            this.qps = qps;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        double p50Millis() {
+            return p50Nanos / 1_000_000d;
+        }
+
+        double p99Millis() {
+            return p99Nanos / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "qps [%.1f], p50 [%.2fms], p99 [%.2fms]", qps, p50Millis(), p99Millis());
+        }
+    }
+}
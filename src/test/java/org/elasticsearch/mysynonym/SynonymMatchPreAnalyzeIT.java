@@ -0,0 +1,72 @@
+package org.elasticsearch.mysynonym;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.ESQueryPlugin;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+
+/**
+ * The terms resolved on {@code pre_analyze_index} are only used by the shards of that index,
+ * the other indices of a search analyze the text with their own analyzers.
+ */
+@ESIntegTestCase.ClusterScope(scope = ESIntegTestCase.Scope.SUITE, numDataNodes = 2, numClientNodes = 0,
+        supportsDedicatedMasters = false)
+public class SynonymMatchPreAnalyzeIT extends ESIntegTestCase {
+
+    private static final String FIELD = "content";
+    private static final String ANALYZER = "match_ana";
+
+    @Override
+    protected Collection<Class<? extends Plugin>> nodePlugins() {
+        return Collections.singletonList(ESQueryPlugin.class);
+    }
+
+    public void testOtherIndicesAnalyzeLocally() throws Exception {
+        createIndex("pre_a", "fast, quick");
+        createIndex("pre_b", "fast, rapid");
+        client().prepareIndex("pre_a", "_doc", "a").setSource(FIELD, "a quick fox").get();
+        client().prepareIndex("pre_b", "_doc", "b").setSource(FIELD, "a rapid fox").get();
+        refresh("pre_a", "pre_b");
+
+        for (String preAnalyzeIndex : new String[] { "pre_a", "pre_b" }) {
+            SearchResponse response = client().prepareSearch("pre_a", "pre_b")
+                    .setQuery(new SynonymMatchBuilder(FIELD, "fast").analyzer(ANALYZER).preAnalyzeIndex(preAnalyzeIndex))
+                    .get();
+            assertNoFailures(response);
+            Set<String> ids = new HashSet<>();
+            for (SearchHit hit : response.getHits().getHits()) {
+                ids.add(hit.getId());
+            }
+            assertEquals("pre_analyze_index [" + preAnalyzeIndex + "]", new HashSet<>(Arrays.asList("a", "b")), ids);
+        }
+    }
+
+    private void createIndex(String index, String rules) throws Exception {
+        final Path dictionary = createTempDir().resolve(index + ".fst");
+        SynonymDictionary.write(SynonymDictionaryCompiler.compile(new StringReader(rules), false, true), dictionary);
+        assertAcked(prepareCreate(index)
+                .setSettings(Settings.builder()
+                        .put("index.number_of_shards", 2)
+                        .put("index.number_of_replicas", 0)
+                        .put("analysis.filter.pre_synonym.type", SynonymDictionaryTokenFilterFactory.NAME)
+                        .put("analysis.filter.pre_synonym.dictionary_path", dictionary.toString())
+                        .put("analysis.analyzer." + ANALYZER + ".type", "custom")
+                        .put("analysis.analyzer." + ANALYZER + ".tokenizer", "standard")
+                        .putList("analysis.analyzer." + ANALYZER + ".filter", Collections.singletonList("pre_synonym")))
+                .addMapping("_doc", FIELD, "type=text,analyzer=standard"));
+        ensureGreen(index);
+    }
+}
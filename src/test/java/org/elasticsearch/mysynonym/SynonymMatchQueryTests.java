@@ -0,0 +1,225 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.synonym.SynonymGraphFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Equivalent analyzer outputs must build equal queries, so that they share the entries of
+ * the query cache, and equal pre-analyzed texts, so that they share the request cache.
+ * Multi-token synonyms are split into segments and paths, see {@code newGraphQuery}.
+ */
+public class SynonymMatchQueryTests extends LuceneTestCase {
+
+    private static final String FIELD = "content";
+
+    private final SynonymMatchQuery matchQuery = new SynonymMatchQuery(null, SynonymMatchServices.NONE);
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        matchQuery.setSynonym_type_boost(SynonymMatchQuery.DEFAULT_SYNONYM_BOOST);
+    }
+
+    public void testReorderedRules() throws Exception {
+        try (Analyzer analyzer = analyzer("a, b, c"); Analyzer reordered = analyzer("c, a, b")) {
+            assertEquivalent(analyzer, "a x", reordered, "a x");
+        }
+    }
+
+    public void testReorderedRulesWithManySynonyms() throws Exception {
+        final List<String> words = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            words.add("s" + i);
+        }
+        final String rules = String.join(", ", words);
+        Collections.shuffle(words, random());
+        try (Analyzer analyzer = analyzer(rules); Analyzer shuffled = analyzer(String.join(", ", words))) {
+            assertEquivalent(analyzer, "s7 x", shuffled, "s7 x");
+        }
+    }
+
+    public void testSynonymEqualToOriginal() throws Exception {
+        SynonymMap.Builder rules = new SynonymMap.Builder(false);
+        rules.add(new CharsRef("a"), new CharsRef("a"), true);
+        rules.add(new CharsRef("a"), new CharsRef("b"), true);
+        try (Analyzer analyzer = analyzer("a, b"); Analyzer withSelf = analyzer(rules.build())) {
+            assertEquivalent(analyzer, "x a", withSelf, "x a");
+        }
+    }
+
+    public void testRepeatedPositions() throws Exception {
+        try (Analyzer analyzer = analyzer("a, b")) {
+            assertEquivalent(analyzer, "a x a", analyzer, "a x a");
+            // a repeated word is one clause boosted by its count, wherever it repeats
+            assertEqualQueries(matchQuery.analyze(analyzer, FIELD, "a x a"), matchQuery.analyze(analyzer, FIELD, "a a x"));
+        }
+    }
+
+    public void testCanonicalTextIsUnchanged() throws Exception {
+        try (Analyzer analyzer = analyzer("a, b, c")) {
+            AnalyzedText text = matchQuery.analyze(analyzer, FIELD, "c a x");
+            assertSame(text, text.canonicalize());
+        }
+    }
+
+    public void testCacheHitForEquivalentRequest() throws Exception {
+        SynonymAnalysisCache cache = new SynonymAnalysisCache(Settings.EMPTY);
+        try (Analyzer analyzer = analyzer("a, b")) {
+            Index index = new Index("test", "_na_");
+            AnalyzedText first = cache.getOrCompute(index, analyzer, FIELD, "a x",
+                    () -> matchQuery.analyze(analyzer, FIELD, "a x"));
+            AnalyzedText second = cache.getOrCompute(new Index("test", "_na_"), analyzer, FIELD, new String("a x"),
+                    () -> matchQuery.analyze(analyzer, FIELD, "a x"));
+            assertSame(first, second);
+            assertEquals(1, cache.misses());
+            assertEquals(1, cache.hits());
+        }
+    }
+
+    public void testGraphSegmentsAndPaths() throws Exception {
+        try (Analyzer analyzer = analyzer("statue of liberty, lady liberty")) {
+            AnalyzedText terms = matchQuery.analyze(analyzer, FIELD, "visit statue of liberty park");
+            assertArrayEquals(new int[] { 0, 1, 5, 6 }, SynonymMatchQuery.graphSegments(terms));
+            assertEquals(set("statue of liberty", "lady liberty"), paths(matchQuery, terms, 1, 5));
+        }
+    }
+
+    public void testGraphSegmentsOfFlatText() throws Exception {
+        try (Analyzer analyzer = analyzer("a, b")) {
+            AnalyzedText terms = matchQuery.analyze(analyzer, FIELD, "a x a");
+            assertArrayEquals(new int[] { 0, 1, 2, 3 }, SynonymMatchQuery.graphSegments(terms));
+        }
+    }
+
+    public void testMaxGraphPathsFallback() throws Exception {
+        try (Analyzer analyzer = analyzer("statue of liberty, lady liberty, monument");
+             SynonymMatchQuery limited = new SynonymMatchQuery(null, SynonymMatchServices.NONE)) {
+            limited.setSynonym_type_boost(SynonymMatchQuery.DEFAULT_SYNONYM_BOOST);
+            AnalyzedText terms = limited.analyze(analyzer, FIELD, "statue of liberty park");
+            final int[] segments = SynonymMatchQuery.graphSegments(terms);
+            assertEquals(3, paths(limited, terms, segments[0], segments[1]).size());
+
+            limited.setMaxGraphPaths(2);
+            assertNull(limited.graphPaths(terms, segments[0], segments[1]));
+            // the segment is matched position by position instead
+            assertNotNull(limited.analyzeList(FIELD, terms));
+            assertEquals(1, limited.getExpansionReport().flattenedGraphs().size());
+        }
+    }
+
+    public void testStopWordInGraph() throws Exception {
+        // the stop filter leaves a hole at "of" that the position lengths of the graph still count
+        try (Analyzer analyzer = analyzer(SynonymDictionaryCompiler.compile(
+                new StringReader("statue of liberty, monument"), false, true), "of")) {
+            AnalyzedText terms = matchQuery.analyze(analyzer, FIELD, "visit statue of liberty park");
+            assertArrayEquals(new int[] { 0, 1, 3, 4 }, SynonymMatchQuery.graphSegments(terms));
+            assertEquals(set("statue liberty", "monument"), paths(matchQuery, terms, 1, 3));
+        }
+        try (Analyzer analyzer = analyzer(SynonymDictionaryCompiler.compile(
+                new StringReader("statue of liberty, lady liberty"), false, true), "of")) {
+            AnalyzedText terms = matchQuery.analyze(analyzer, FIELD, "visit statue of liberty park");
+            assertArrayEquals(new int[] { 0, 1, 4, 5 }, SynonymMatchQuery.graphSegments(terms));
+            assertEquals(set("statue liberty", "lady liberty"), paths(matchQuery, terms, 1, 4));
+        }
+    }
+
+    private static Set<String> paths(SynonymMatchQuery matchQuery, AnalyzedText terms, int start, int end) {
+        final List<int[]> paths = matchQuery.graphPaths(terms, start, end);
+        assertNotNull(paths);
+        final Set<String> strings = new HashSet<>();
+        for (int[] path : paths) {
+            final StringBuilder builder = new StringBuilder();
+            for (int ord : path) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(terms.term(ord).utf8ToString());
+            }
+            strings.add(builder.toString());
+        }
+        return strings;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private void assertEquivalent(Analyzer analyzer, String text, Analyzer otherAnalyzer, String otherText) throws IOException {
+        final AnalyzedText terms = matchQuery.analyze(analyzer, FIELD, text);
+        final AnalyzedText otherTerms = matchQuery.analyze(otherAnalyzer, FIELD, otherText);
+        assertEquals(terms, otherTerms);
+        assertEquals(terms.hashCode(), otherTerms.hashCode());
+        assertEquals(bytes(terms), bytes(otherTerms));
+        assertEqualQueries(terms, otherTerms);
+
+        final Index index = new Index("test", "_na_");
+        final SynonymAnalysisCache.Key key = key(index, analyzer, text);
+        final SynonymAnalysisCache.Key otherKey = key(new Index("test", "_na_"), otherAnalyzer, new String(otherText));
+        if (analyzer == otherAnalyzer && text.equals(otherText)) {
+            assertEquals(key, otherKey);
+            assertEquals(key.hashCode(), otherKey.hashCode());
+        } else {
+            // entries are per analyzer instance and text, equal texts are still cached separately
+            assertNotEquals(key, otherKey);
+        }
+    }
+
+    private void assertEqualQueries(AnalyzedText terms, AnalyzedText otherTerms) {
+        final Query query = matchQuery.analyzeList(FIELD, terms);
+        final Query otherQuery = matchQuery.analyzeList(FIELD, otherTerms);
+        assertEquals(query, otherQuery);
+        assertEquals(query.hashCode(), otherQuery.hashCode());
+    }
+
+    private static SynonymAnalysisCache.Key key(Index index, Analyzer analyzer, String text) {
+        return new SynonymAnalysisCache.Key(SynonymDictionaryTokenFilterFactory.dictionaryGeneration(analyzer),
+                index, analyzer, FIELD, text);
+    }
+
+    private static BytesReference bytes(AnalyzedText terms) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            terms.writeTo(out);
+            return out.bytes();
+        }
+    }
+
+    private static Analyzer analyzer(String rules) throws Exception {
+        return analyzer(SynonymDictionaryCompiler.compile(new StringReader(rules), false, true));
+    }
+
+    private static Analyzer analyzer(SynonymMap synonyms, String... stopWords) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new WhitespaceTokenizer();
+                TokenStream stream = new SynonymGraphFilter(tokenizer, synonyms, false);
+                if (stopWords.length > 0) {
+                    stream = new StopFilter(stream, new CharArraySet(Arrays.asList(stopWords), false));
+                }
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package org.elasticsearch.mysynonym;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.CheckHits;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryUtils;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+import java.io.IOException;
+
+/**
+ * The bounds reported by the scorer of {@link SynonymPositionQuery} must hold for the scores
+ * and explanations it produces, pruned top hits must equal the exhaustive ones.
+ */
+public class SynonymPositionQueryTests extends LuceneTestCase {
+
+    private static final String FIELD = "content";
+    private static final String[] WORDS = { "fast", "quick", "speedy", "fox", "vixen", "dog", "the", "a" };
+
+    private Directory directory;
+    private IndexReader reader;
+    private IndexSearcher searcher;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = newDirectory();
+        try (RandomIndexWriter writer = new RandomIndexWriter(random(), directory)) {
+            for (int i = atLeast(500); i > 0; i--) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 1 + random().nextInt(20); j > 0; j--) {
+                    // skewed, so that the words have different impacts
+                    text.append(WORDS[Math.min(random().nextInt(WORDS.length), random().nextInt(WORDS.length))]).append(' ');
+                }
+                Document document = new Document();
+                document.add(new TextField(FIELD, text.toString(), Field.Store.NO));
+                writer.addDocument(document);
+            }
+            reader = writer.getReader();
+        }
+        searcher = newSearcher(reader);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        reader.close();
+        directory.close();
+        super.tearDown();
+    }
+
+    public void testSinglePosition() throws IOException {
+        for (float synonymScore : new float[] { 0.01f, 0.5f, 1f, 5f }) {
+            check(position("fast", synonymScore, "quick", "speedy"));
+            check(position("fox", synonymScore, "vixen"));
+        }
+    }
+
+    public void testSynonymsOnly() throws IOException {
+        check(new SynonymPositionQuery(null, synonyms("quick", "speedy"), 0.5f));
+    }
+
+    public void testMissingTerms() throws IOException {
+        check(position("missing", 0.5f, "quick"));
+        check(position("fast", 0.5f, "missing"));
+    }
+
+    public void testPositionsInBooleanQuery() throws IOException {
+        for (BooleanClause.Occur occur : new BooleanClause.Occur[] { BooleanClause.Occur.SHOULD, BooleanClause.Occur.MUST }) {
+            for (float synonymScore : new float[] { 0.1f, 1f }) {
+                check(new BooleanQuery.Builder()
+                        .add(position("fast", synonymScore, "quick", "speedy"), occur)
+                        .add(position("fox", synonymScore, "vixen"), occur)
+                        .add(new TermQuery(new Term(FIELD, "dog")), BooleanClause.Occur.SHOULD)
+                        .build());
+            }
+        }
+    }
+
+    public void testBoost() throws IOException {
+        Query query = position("fast", 0.5f, "quick", "speedy");
+        check(new BoostQuery(query, 3f));
+    }
+
+    public void testPrunedTopHitsOfSinglePosition() throws IOException {
+        Query query = searcher.rewrite(position("fast", 0.1f, "quick", "speedy"));
+        TopScoreDocCollector pruned = TopScoreDocCollector.create(10, 1);
+        searcher.search(query, pruned);
+        TopScoreDocCollector exhaustive = TopScoreDocCollector.create(10, Integer.MAX_VALUE);
+        searcher.search(query, exhaustive);
+        TopDocs expected = exhaustive.topDocs();
+        TopDocs actual = pruned.topDocs();
+        CheckHits.checkEqual(query, expected.scoreDocs, actual.scoreDocs);
+    }
+
+    private void check(Query query) throws IOException {
+        QueryUtils.check(random(), query, searcher);
+        CheckHits.checkExplanations(query, FIELD, searcher);
+        CheckHits.checkTopScores(random(), query, searcher);
+    }
+
+    private static SynonymPositionQuery position(String original, float synonymScore, String... synonyms) {
+        return new SynonymPositionQuery(new TermQuery(new Term(FIELD, original)), synonyms(synonyms), synonymScore);
+    }
+
+    private static Query synonyms(String... synonyms) {
+        BytesRef[] terms = new BytesRef[synonyms.length];
+        for (int i = 0; i < synonyms.length; i++) {
+            terms[i] = new BytesRef(synonyms[i]);
+        }
+        return new TermInSetQuery(FIELD, terms);
+    }
+}